@@ -0,0 +1,177 @@
+package classming.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.SplittableRandom;
+import java.util.zip.ZipFile;
+
+/**
+ * Handles on the fuzzer. Its classes live in the default package, which code in a named package, and so
+ * JMH, cannot name, so they are reached through method handles. The handles are static finals of the
+ * exact erased types the benchmarks call them with, so the JIT inlines them like direct calls.
+ */
+final class Fuzzer {
+    static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final Class<?> CLASS_PARSER = load("ClassParser");
+    static final Class<?> MAIN = load("Main");
+    static final Class<?> METHOD = load("Method");
+    static final Class<?> MUTATION_STMT = load("MutationStmt");
+    static final Class<?> INSN_STMT = load("InsnStmt");
+    static final Class<?> SHARED_COVERAGE = load("SharedCoverage");
+    static final Class<?> JAR_INDEX = load("JarIndex");
+
+    // ClassParser
+    static final MethodHandle NEW_CLASS_PARSER = constructor(CLASS_PARSER);
+    static final MethodHandle PARSE_CLASS = virtual(CLASS_PARSER, "parseClass", void.class, InputStream.class);
+    static final MethodHandle INSTRUMENT_CLASS = virtual(CLASS_PARSER, "instrumentClass", byte[].class, InputStream.class);
+    static final MethodHandle MUTATE_CLASS = virtual(CLASS_PARSER, "mutateClass", byte[].class, MUTATION_STMT, ArrayList.class);
+    static final MethodHandle COVER_SEED = virtual(CLASS_PARSER, "coverSeed", double.class, BitSet.class);
+    static final MethodHandle METHOD_DICTIONARY = getter(CLASS_PARSER, "methodDictionary", Hashtable.class);
+    static final MethodHandle INSN_LIST = getter(CLASS_PARSER, "insnList", ArrayList.class);
+    static final MethodHandle TOTAL_LIVECODE = getter(CLASS_PARSER, "totalLivecodeSet", SHARED_COVERAGE);
+    static final MethodHandle SET_CUR_LIVECODE = setter(CLASS_PARSER, "curLivecodeSet", BitSet.class);
+    static final MethodHandle SET_RAND = setter(CLASS_PARSER, "rand", SplittableRandom.class);
+
+    // Main
+    static final MethodHandle SELECT_METHOD = statik(MAIN, "selectMethod", METHOD, ArrayList.class, BitSet.class, SplittableRandom.class);
+    static final MethodHandle SELECT_HP = statik(MAIN, "selectHP", int.class, METHOD, BitSet.class, SplittableRandom.class);
+    static final MethodHandle SELECT_TP = statik(MAIN, "selectTP", ArrayList.class, METHOD, int.class, SHARED_COVERAGE, BitSet.class, SplittableRandom.class);
+    static final MethodHandle CREATE_MUTATION = statik(MAIN, "createMutation", MUTATION_STMT, CLASS_PARSER, int.class, METHOD);
+
+    // JarIndex
+    static final MethodHandle BUILD_INDEX = statik(JAR_INDEX, "build", JAR_INDEX, File.class, Collection.class, int.class);
+
+    // Method, MutationStmt, InsnStmt, SharedCoverage
+    static final MethodHandle ADD_MUTATION = virtual(METHOD, "addMutation", void.class, MUTATION_STMT);
+    static final MethodHandle METHOD_NAME = getter(METHOD, "methodName", String.class);
+    static final MethodHandle METHOD_INSN_SET = getter(METHOD, "insnSet", BitSet.class);
+    static final MethodHandle MUTATION_METHOD = getter(MUTATION_STMT, "METHOD", String.class);
+    static final MethodHandle NEW_INSN_STMT = constructor(INSN_STMT, String.class, String.class, String.class, int.class, boolean.class);
+    static final MethodHandle IDENTIFIER = virtual(INSN_STMT, "identifier", String.class);
+    static final MethodHandle SHARED_OR = virtual(SHARED_COVERAGE, "or", void.class, BitSet.class);
+
+    static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Erases every fuzzer type to Object, so that callers can use invokeExact without naming it.
+     */
+    static MethodHandle erase(MethodHandle mh) {
+        MethodType type = mh.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isFuzzerType(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (isFuzzerType(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return mh.asType(type);
+    }
+
+    static boolean isFuzzerType(Class<?> c) {
+        return !c.isPrimitive() && !c.isArray() && c.getName().indexOf('.') < 0;
+    }
+
+    static MethodHandle constructor(Class<?> owner, Class<?>... params) {
+        try {
+            return erase(LOOKUP.findConstructor(owner, MethodType.methodType(void.class, params)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static MethodHandle virtual(Class<?> owner, String name, Class<?> ret, Class<?>... params) {
+        try {
+            return erase(LOOKUP.findVirtual(owner, name, MethodType.methodType(ret, params)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static MethodHandle statik(Class<?> owner, String name, Class<?> ret, Class<?>... params) {
+        try {
+            return erase(LOOKUP.findStatic(owner, name, MethodType.methodType(ret, params)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static MethodHandle getter(Class<?> owner, String name, Class<?> type) {
+        try {
+            return erase(LOOKUP.findGetter(owner, name, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static MethodHandle setter(Class<?> owner, String name, Class<?> type) {
+        try {
+            return erase(LOOKUP.findSetter(owner, name, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Reads an input class: a class file, or jar!entry for a class in a jar. Relative paths are resolved
+     * against the classming.root system property, the project root by default.
+     */
+    static byte[] read(String input) throws IOException {
+        File root = new File(System.getProperty("classming.root", "."));
+        int bang = input.indexOf('!');
+        if (bang < 0) {
+            return Files.readAllBytes(new File(root, input).toPath());
+        }
+        try (ZipFile jar = new ZipFile(new File(root, input.substring(0, bang)))) {
+            InputStream in = jar.getInputStream(jar.getEntry(input.substring(bang + 1)));
+            byte[] bytecode = new byte[(int) jar.getEntry(input.substring(bang + 1)).getSize()];
+            int off = 0;
+            while (off < bytecode.length) {
+                off += in.read(bytecode, off, bytecode.length - off);
+            }
+            return bytecode;
+        }
+    }
+
+    /**
+     * A class parser that has parsed the input, with every seed insn treated as live.
+     */
+    static Object parse(byte[] bytecode, long seed) throws Throwable {
+        Object cp = (Object) NEW_CLASS_PARSER.invokeExact();
+        PARSE_CLASS.invokeExact(cp, (InputStream) new ByteArrayInputStream(bytecode));
+        BitSet live = new BitSet();
+        live.set(0, insnList(cp).size());
+        SET_CUR_LIVECODE.invokeExact(cp, live);
+        SET_RAND.invokeExact(cp, new SplittableRandom(seed));
+        return cp;
+    }
+
+    static ArrayList<?> insnList(Object cp) throws Throwable {
+        return (ArrayList<?>) INSN_LIST.invokeExact(cp);
+    }
+
+    @SuppressWarnings("unchecked")
+    static ArrayList<Object> methods(Object cp) throws Throwable {
+        return new ArrayList<>(((Hashtable<String, Object>) METHOD_DICTIONARY.invokeExact(cp)).values());
+    }
+
+    private Fuzzer() {
+    }
+}
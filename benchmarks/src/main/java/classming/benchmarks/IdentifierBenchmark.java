@@ -0,0 +1,37 @@
+package classming.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * InsnStmt.identifier, which names the coverage probe of an insn: building it for a new insn, and reading
+ * it back once it is cached.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdentifierBenchmark {
+    String method = "main([Ljava/lang/String;)V";
+    Object insn;
+
+    @Setup
+    public void setup() throws Throwable {
+        insn = (Object) Fuzzer.NEW_INSN_STMT.invokeExact("MethodInsn", "182 java/io/PrintStream println (Ljava/lang/String;)V false", method, 17, false);
+        String identifier = (String) Fuzzer.IDENTIFIER.invokeExact(insn);
+    }
+
+    @Benchmark
+    public String identifier() throws Throwable {
+        Object is = (Object) Fuzzer.NEW_INSN_STMT.invokeExact("MethodInsn", "182 java/io/PrintStream println (Ljava/lang/String;)V false", method, 17, false);
+        return (String) Fuzzer.IDENTIFIER.invokeExact(is);
+    }
+
+    @Benchmark
+    public String identifierCached() throws Throwable {
+        return (String) Fuzzer.IDENTIFIER.invokeExact(insn);
+    }
+}
@@ -0,0 +1,38 @@
+package classming.benchmarks;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Indexing every class of a jar with JarIndex, by the number of fork/join workers. The hierarchy index
+ * is built in the setup, as the fuzzer builds it before the workers start.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexBenchmark {
+    @Param({"avrora-cvs-20091224.jar"})
+    public String input;
+
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    File jar;
+
+    @Setup
+    public void setup() throws Throwable {
+        jar = new File(System.getProperty("classming.root", "."), input);
+        Object index = (Object) Fuzzer.BUILD_INDEX.invokeExact(jar, (Collection) null, 1);
+    }
+
+    @Benchmark
+    public Object buildIndex() throws Throwable {
+        return (Object) Fuzzer.BUILD_INDEX.invokeExact(jar, (Collection) null, workers);
+    }
+}
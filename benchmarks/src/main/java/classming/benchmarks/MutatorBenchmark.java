@@ -0,0 +1,86 @@
+package classming.benchmarks;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Generating a mutant from a chain state that already holds a number of accepted mutations. The
+ * mutations are drawn with the fuzzer's own selection functions from a fixed seed, every seed insn
+ * counting as live; mutations that cannot be generated are skipped, so a small class may hold fewer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MutatorBenchmark {
+    @Param({"seed/Seed.class", "seed/avrora/Main.class", "avrora-cvs-20091224.jar!avrora/arch/legacy/LegacyInterpreter.class"})
+    public String input;
+
+    @Param({"0", "10", "100"})
+    public int mutations;
+
+    Object cp;
+    Object next;
+
+    @Setup
+    public void setup() throws Throwable {
+        cp = Fuzzer.parse(Fuzzer.read(input), 42);
+        SplittableRandom rand = new SplittableRandom(42);
+        int added = 0;
+        for (int attempt = 0; added < mutations && attempt < mutations * 20; attempt++) {
+            Object ms = propose(rand);
+            if (ms != null) {
+                Fuzzer.ADD_MUTATION.invokeExact(method(ms), ms);
+                added++;
+            }
+        }
+        while (next == null) {
+            next = propose(rand);
+        }
+    }
+
+    /**
+     * A GOTO or RETURN mutation of the current state that can be generated, or null.
+     */
+    Object propose(SplittableRandom rand) throws Throwable {
+        BitSet live = new BitSet();
+        live.set(0, Fuzzer.insnList(cp).size());
+        Object method = (Object) Fuzzer.SELECT_METHOD.invokeExact(Fuzzer.methods(cp), live, rand);
+        if (method == null) {
+            return null;
+        }
+        int hi = rand.nextBoolean() ? Opcodes.GOTO : Opcodes.RETURN;
+        Object ms = (Object) Fuzzer.CREATE_MUTATION.invokeExact(cp, hi, method);
+        try {
+            byte[] mutant = (byte[]) Fuzzer.MUTATE_CLASS.invokeExact(cp, ms, (ArrayList) null);
+            if (mutant == null) {
+                return null;
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return ms;
+    }
+
+    Object method(Object ms) throws Throwable {
+        String name = (String) Fuzzer.MUTATION_METHOD.invokeExact(ms);
+        for (Object method : Fuzzer.methods(cp)) {
+            if (((String) Fuzzer.METHOD_NAME.invokeExact(method)).equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalStateException(name);
+    }
+
+    @Benchmark
+    public byte[] mutateClass() throws Throwable {
+        return (byte[]) Fuzzer.MUTATE_CLASS.invokeExact(cp, next, (ArrayList) null);
+    }
+}
@@ -0,0 +1,43 @@
+package classming.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Parsing and instrumenting a seed. parseClass includes building the cached instrumented seed, as it
+ * does in the fuzzer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"seed/Seed.class", "seed/avrora/Main.class", "avrora-cvs-20091224.jar!avrora/arch/legacy/LegacyInterpreter.class"})
+    public String input;
+
+    byte[] bytecode;
+    Object cp;
+
+    @Setup
+    public void setup() throws Throwable {
+        bytecode = Fuzzer.read(input);
+        cp = Fuzzer.parse(bytecode, 42);
+    }
+
+    @Benchmark
+    public Object parseClass() throws Throwable {
+        Object parser = (Object) Fuzzer.NEW_CLASS_PARSER.invokeExact();
+        Fuzzer.PARSE_CLASS.invokeExact(parser, (InputStream) new ByteArrayInputStream(bytecode));
+        return parser;
+    }
+
+    @Benchmark
+    public byte[] instrumentClass() throws Throwable {
+        return (byte[]) Fuzzer.INSTRUMENT_CLASS.invokeExact(cp, (InputStream) new ByteArrayInputStream(bytecode));
+    }
+}
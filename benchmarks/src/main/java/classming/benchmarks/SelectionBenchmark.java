@@ -0,0 +1,68 @@
+package classming.benchmarks;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The selection functions of a proposal and the coverage measure of its acceptance test. Every seed
+ * insn is live in the current mutant and every other one has been covered before, so selectTP finds
+ * both covered and uncovered targets.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SelectionBenchmark {
+    @Param({"seed/Seed.class", "seed/avrora/Main.class", "avrora-cvs-20091224.jar!avrora/arch/legacy/LegacyInterpreter.class"})
+    public String input;
+
+    Object cp;
+    ArrayList<Object> methods;
+    Object method;
+    Object total;
+    BitSet live;
+    SplittableRandom rand;
+
+    @Setup
+    public void setup() throws Throwable {
+        cp = Fuzzer.parse(Fuzzer.read(input), 42);
+        methods = Fuzzer.methods(cp);
+        int size = Fuzzer.insnList(cp).size();
+        live = new BitSet();
+        live.set(0, size);
+        BitSet covered = new BitSet();
+        for (int i = 0; i < size; i += 2) {
+            covered.set(i);
+        }
+        total = (Object) Fuzzer.TOTAL_LIVECODE.invokeExact(cp);
+        Fuzzer.SHARED_OR.invokeExact(total, covered);
+        rand = new SplittableRandom(42);
+        method = (Object) Fuzzer.SELECT_METHOD.invokeExact(methods, live, rand);
+    }
+
+    @Benchmark
+    public Object selectMethod() throws Throwable {
+        return (Object) Fuzzer.SELECT_METHOD.invokeExact(methods, live, rand);
+    }
+
+    @Benchmark
+    public int selectHP() throws Throwable {
+        return (int) Fuzzer.SELECT_HP.invokeExact(method, live, rand);
+    }
+
+    @Benchmark
+    public ArrayList selectTP() throws Throwable {
+        return (ArrayList) Fuzzer.SELECT_TP.invokeExact(method, 1, total, live, rand);
+    }
+
+    @Benchmark
+    public double coverSeed() throws Throwable {
+        return (double) Fuzzer.COVER_SEED.invokeExact(cp, live);
+    }
+}
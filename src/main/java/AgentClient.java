@@ -0,0 +1,186 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fuzzer side of the LivecodeAgent execution server. Starts the server on demand, ships instrumented
+ * classes to it, and restarts it whenever it recycles itself or crashes.
+ */
+public class AgentClient {
+    Process server;
+    Socket socket;
+    DataInputStream in;
+    DataOutputStream out;
+    public String lastStatus;
+    public LinkedHashMap<String, BitSet> lastProbes;
+    public long lastTime;       // ms the last run took, without server start
+    public boolean lastRecycle;
+
+    public AgentClient() {
+        server = null;
+        socket = null;
+        lastStatus = LivecodeAgent.STATUS_OK;
+        lastProbes = new LinkedHashMap<>();
+    }
+
+    /**
+     * Launches a fresh server JVM on a free port and connects to it.
+     *
+     * @throws IOException  throws IOException
+     */
+    public void start() throws IOException {
+        ArrayList<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (!System.getProperty("java.specification.version").startsWith("1.")) {
+            // the exit trap needs a security manager
+            cmd.add("-Djava.security.manager=allow");
+        }
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(LivecodeAgent.class.getName());
+        cmd.add("0");
+
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        server = pb.start();
+
+        final BufferedReader br = new BufferedReader(new InputStreamReader(server.getInputStream()));
+        String line;
+        int port = -1;
+        while ((line = br.readLine()) != null) {
+            if (line.startsWith(LivecodeAgent.READY)) {
+                port = Integer.parseInt(line.split(" ")[1]);
+                break;
+            }
+        }
+        if (port < 0) {
+            close();
+            throw new IOException("Livecode server failed to start");
+        }
+
+        // keep draining anything else the server prints
+        Thread drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (br.readLine() != null) {
+                    }
+                } catch (IOException e) {
+                    // server is gone
+                }
+            }
+        });
+        drainer.setDaemon(true);
+        drainer.start();
+
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Runs an instrumented class on the server.
+     *
+     * @param className     internal name of the class
+     * @param bytecode      instrumented class bytes
+     * @param timeout       ms the run may take
+     * @return              ArrayList of live instructions printed by the class, probes go to lastProbes
+     * @throws IOException  throws IOException if the server could not be reached
+     */
+    public ArrayList<String> run(String className, byte[] bytecode, long timeout) throws IOException {
+        return run(className, Collections.singletonMap(className, bytecode), timeout);
+    }
+
+    /**
+     * Runs main of the entry class on the server, with instrumented classes in place of the jar's. A
+     * server that does not answer within the timeout and AGENT_TIMEOUT_MARGIN is killed and the run
+     * counts as a timeout.
+     *
+     * @param className     internal name of the entry class
+     * @param classes       internal name -> instrumented class bytes, including the entry class if it is fuzzed
+     * @param timeout       ms the run may take
+     * @return              ArrayList of live instructions printed by the classes, probes go to lastProbes
+     * @throws IOException  throws IOException if the server could not be reached
+     */
+    public ArrayList<String> run(String className, Map<String, byte[]> classes, long timeout) throws IOException {
+        if (server == null || !server.isAlive()) {
+            close();
+            start();
+        }
+        long startTime = System.currentTimeMillis();
+
+        ArrayList<String> executedInsn = new ArrayList<>();
+        lastProbes = new LinkedHashMap<>();
+        try {
+            out.writeUTF(LivecodeAgent.MSG_RUN);
+            out.writeUTF(className.replace('/', '.'));
+            out.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+                out.writeUTF(e.getKey().replace('/', '.'));
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+            out.writeLong(timeout);
+            out.flush();
+
+            // the server enforces the timeout itself, this only catches a server wedged outside the target
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, timeout + Config.AGENT_TIMEOUT_MARGIN));
+            executedInsn = readResponse(in);
+            if (lastRecycle) {
+                close();
+            }
+        } catch (SocketTimeoutException e) {
+            // the server did not answer, recycle it
+            lastStatus = LivecodeAgent.STATUS_TIMEOUT;
+            close();
+        } catch (IOException e) {
+            // the server crashed while running the target
+            lastStatus = LivecodeAgent.STATUS_ERROR;
+            close();
+        }
+        lastTime = System.currentTimeMillis() - startTime;
+        return executedInsn;
+    }
+
+    /**
+     * Reads the response to one run, from the server or from the result file of a batch.
+     *
+     * @param in            the response stream
+     * @return              ArrayList of live instructions printed by the class, the rest goes to the last* fields
+     * @throws IOException  throws IOException if the response is cut short
+     */
+    public ArrayList<String> readResponse(DataInputStream in) throws IOException {
+        ArrayList<String> executedInsn = new ArrayList<>();
+        lastStatus = in.readUTF();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            executedInsn.add(in.readUTF());
+        }
+        byte[] probes = new byte[in.readInt()];
+        in.readFully(probes);
+        lastProbes = CoverageProbe.read(new ByteArrayInputStream(probes));
+        lastRecycle = in.readBoolean();
+        return executedInsn;
+    }
+
+    public void close() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (server != null) {
+            server.destroyForcibly();
+        }
+        socket = null;
+        server = null;
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Class-data-sharing archive of the target for forked runs.
+ *
+ * An archive is only used when the classpath of a run starts with the classpath it was dumped with, and
+ * a dump refuses non-empty directories on the classpath. Runs therefore use CDS_BASE_JAR, the target jar
+ * without the seed class plus the probe runtime, followed by the per-run overlay directory that holds
+ * the mutant. The archive is recorded once per campaign from a seed run with -XX:ArchiveClassesAtExit
+ * (JDK 13+), launched through CdsTrainer. All of them run on the JVM of the fuzzer, since an archive is
+ * only valid for the JVM that recorded it. The measured launch times and the gain are campaign metrics.
+ */
+public class CdsArchive {
+    public static volatile boolean enabled = false;
+    public static long plainLaunch = -1;     // mean seed run time in ms without the archive
+    public static long cdsLaunch = -1;       // mean seed run time in ms with the archive
+    public static AtomicInteger launches = new AtomicInteger();
+
+    /**
+     * Builds the base jar and records the archive. Leaves CDS disabled if anything fails.
+     *
+     * @param cp    the class parser of the seed
+     */
+    public static void prepare(ClassParser cp) {
+        enabled = false;
+        if (!Config.USE_CDS || !Config.USE_OVERLAY || !supported()) {
+            return;
+        }
+        File archive = new File(Config.CDS_ARCHIVE);
+        File seedFile = new File(Config.OVERLAY_DIR, "cds-seed" + Config.CLASS_EXT);
+        try {
+            buildBaseJar(new File(Config.CDS_BASE_JAR));
+            archive.delete();
+            ClassParser.writeClassFile(seedFile, cp.instrumentedSeed);
+
+            ArrayList<String> cmd = new ArrayList<>();
+            cmd.add(ClassParser.javaBinary());
+            cmd.add("-XX:ArchiveClassesAtExit=" + archive.getPath());
+            cmd.addAll(Arrays.asList(Config.LAUNCH_PROFILE));
+            cmd.add("--add-opens=java.base/java.lang=ALL-UNNAMED");
+            cmd.add("-D" + Config.PROBE_PROPERTY + "=" + new File(Config.OVERLAY_DIR, "cds-" + Config.PROBE_FILE).getPath());
+            cmd.add("-cp");
+            cmd.add(Config.CDS_BASE_JAR);
+            cmd.add(CdsTrainer.class.getName());
+            cmd.add(seedFile.getPath());
+            cmd.add(Config.SEED_CLASS_MAIN);
+            long time = launch(cmd);
+            if (time < 0 || !archive.exists()) {
+                System.out.println("CDS archive could not be recorded, running without it");
+                return;
+            }
+
+            // measure the seed with and without the archive
+            File overlay = cp.createOverlay(cp.instrumentedSeed);
+            try {
+                plainLaunch = measure(seedCommand(overlay, false));
+                cdsLaunch = measure(seedCommand(overlay, true));
+            } finally {
+                cp.deleteOverlay(overlay);
+            }
+            // classes older than version 50 are never archived, so an old target may gain nothing
+            enabled = plainLaunch >= 0 && cdsLaunch >= 0 && cdsLaunch < plainLaunch;
+            System.out.println(String.format("CDS archive %s: seed launch %dms -> %dms%s", archive.getPath(), plainLaunch,
+                    cdsLaunch, enabled ? "" : ", running without it"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            seedFile.delete();
+        }
+    }
+
+    /**
+     * @return  true if the forked JVM can record a dynamic archive
+     */
+    static boolean supported() {
+        String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= 13;
+    }
+
+    /**
+     * Copies the target jar without the seed class and adds the classes a run needs from the fuzzer.
+     *
+     * @param baseJar       the jar to write
+     * @throws IOException  throws IOException
+     */
+    static void buildBaseJar(File baseJar) throws IOException {
+        String seedEntry = Config.SEED_CLASS + Config.CLASS_EXT;
+        ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(Config.JAR_FILE)));
+        ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(baseJar)));
+        ZipEntry entry;
+        while ((entry = in.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (name.equals(seedEntry) || (name.startsWith("META-INF/")
+                    && (name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA")))) {
+                // the seed comes from the overlay, and the signatures no longer match
+                continue;
+            }
+            out.putNextEntry(new ZipEntry(name));
+            out.write(ClassParser.readBytes(in));
+            out.closeEntry();
+        }
+        in.close();
+        out.putNextEntry(new ZipEntry(CoverageProbe.class.getName() + Config.CLASS_EXT));
+        out.write(ClassParser.probeRuntime());
+        out.closeEntry();
+        out.putNextEntry(new ZipEntry(CdsTrainer.class.getName() + Config.CLASS_EXT));
+        InputStream trainer = CdsTrainer.class.getResourceAsStream(CdsTrainer.class.getName() + Config.CLASS_EXT);
+        out.write(ClassParser.readBytes(trainer));
+        trainer.close();
+        out.closeEntry();
+        out.close();
+    }
+
+    /**
+     * JVM options and classpath of a forked run.
+     *
+     * @param overlay   the overlay directory of the run
+     * @return          options up to and including the classpath, starting with the java command
+     */
+    public static ArrayList<String> command(File overlay) {
+        if (enabled) {
+            launches.incrementAndGet();
+        }
+        return command(overlay, enabled);
+    }
+
+    static ArrayList<String> command(File overlay, boolean cds) {
+        ArrayList<String> cmd = new ArrayList<>();
+        cmd.add(ClassParser.javaBinary());
+        cmd.addAll(Arrays.asList(Config.LAUNCH_PROFILE));
+        cmd.add("-cp");
+        if (cds) {
+            cmd.add(1, "-XX:SharedArchiveFile=" + Config.CDS_ARCHIVE);
+            cmd.add(Config.CDS_BASE_JAR + File.pathSeparator + overlay.getPath());
+        } else {
+            cmd.add(overlay.getPath() + File.pathSeparator + Config.JAR_FILE);
+        }
+        return cmd;
+    }
+
+    static ArrayList<String> seedCommand(File overlay, boolean cds) {
+        ArrayList<String> cmd = command(overlay, cds);
+        cmd.add(Config.SEED_CLASS_MAIN);
+        return cmd;
+    }
+
+    /**
+     * Mean run time of a command over CDS_SAMPLES runs.
+     *
+     * @param cmd   the command
+     * @return      mean run time in ms, or -1 if a run timed out
+     */
+    static long measure(ArrayList<String> cmd) throws IOException {
+        long total = 0;
+        for (int i = 0; i < Config.CDS_SAMPLES; i++) {
+            long time = launch(cmd);
+            if (time < 0) {
+                return -1;
+            }
+            total += time;
+        }
+        return total / Config.CDS_SAMPLES;
+    }
+
+    /**
+     * Runs a command to its end, its output goes to the cds.log file of the overlay directory.
+     *
+     * @param cmd   the command
+     * @return      run time in ms, or -1 if it timed out
+     */
+    static long launch(ArrayList<String> cmd) throws IOException {
+        long startTime = System.currentTimeMillis();
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(new File(Config.OVERLAY_DIR, "cds.log"));
+        Process p = pb.start();
+        try {
+            if (!p.waitFor(Config.TIMEOUT_CEILING, TimeUnit.MILLISECONDS)) {
+                p.destroyForcibly();
+                return -1;
+            }
+        } catch (InterruptedException e) {
+            p.destroyForcibly();
+            return -1;
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * @return  ms the archive saves per launch, 0 if it is not used
+     */
+    public static long gain() {
+        return enabled ? plainLaunch - cdsLaunch : 0;
+    }
+
+    /**
+     * Registers the measured launch times, the gain per launch and the time saved so far as gauges.
+     */
+    public static void gauges() {
+        Metrics.gauge("cds_plain_launch_ms", () -> plainLaunch);
+        Metrics.gauge("cds_launch_ms", () -> cdsLaunch);
+        Metrics.gauge("cds_gain_ms", CdsArchive::gain);
+        Metrics.gauge("cds_launches", launches::get);
+        Metrics.gauge("cds_saved_ms", () -> gain() * launches.get());
+    }
+
+    /**
+     * @return  a line for the campaign summary
+     */
+    public static String report() {
+        if (!enabled) {
+            return "CDS: disabled";
+        }
+        return String.format("CDS: %d launches, %dms -> %dms per seed launch, about %dms saved", launches.get(),
+                plainLaunch, cdsLaunch, gain() * launches.get());
+    }
+}
@@ -0,0 +1,39 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * Main class of the run that records the class-data-sharing archive. Shipped in the base jar, which
+ * holds the target jar without the seed class. The seed class is defined straight into the application
+ * class loader, so that it is in the same runtime package as in a normal run but its directory never
+ * appears on the classpath, which the archive dump does not allow.
+ *
+ * Usage: CdsTrainer &lt;class file&gt; &lt;binary class name&gt; [args...]
+ */
+public class CdsTrainer {
+    public static void main(String[] args) throws Throwable {
+        InputStream in = new FileInputStream(args[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        byte[] bytecode = out.toByteArray();
+
+        ClassLoader loader = ClassLoader.getSystemClassLoader();
+        java.lang.reflect.Method define = ClassLoader.class.getDeclaredMethod("defineClass",
+                String.class, byte[].class, int.class, int.class);
+        define.setAccessible(true);
+        Class<?> c = (Class<?>) define.invoke(loader, args[1], bytecode, 0, bytecode.length);
+
+        String[] mainArgs = new String[args.length - 2];
+        System.arraycopy(args, 2, mainArgs, 0, mainArgs.length);
+        try {
+            c.getMethod("main", String[].class).invoke(null, (Object) mainArgs);
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
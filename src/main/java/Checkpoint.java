@@ -0,0 +1,247 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * State of one chain, saved every CHECKPOINT_INTERVAL iterations so that a campaign killed half way can
+ * be continued with --resume. A checkpoint is written to a temporary file, synced and renamed over the
+ * previous one, so a crash leaves either the old or the new checkpoint. The result and time files of the
+ * chain are synced first and their lengths recorded; on resume they are cut back to those lengths, since
+ * the iterations after the checkpoint are run again.
+ *
+ * The random source of the chain cannot be read back, so it is replaced by a new SplittableRandom seeded
+ * from itself at every checkpoint and only that seed is saved.
+ *
+ * File format: int MAGIC, UTF key, int next iteration, long result file length, long time file length,
+ * long random seed, int chainMutationCount, int mutationCount, double curCoverSeedVal, bitset
+ * curLivecodeSet, boolean curLivecodeExited, bitset totalLivecodeSet, int method count, then per mutated method: UTF name, int
+ * mutationCount, int mutation count and per mutation int ID, int REMOVE, int HI, int HP, int tp count and
+ * int tps, then int tpSet size and int tps, then int hp count and per hp: int hp, int count and int
+ * indexes into the mutations of the method. A bitset is an int word count and long words.
+ */
+public class Checkpoint {
+    public final static int MAGIC = 0xC1A55CC8;
+
+    public int iter;            // first iteration to run after the resume
+    public long resultLength;
+    public long timeLength;
+
+    /**
+     * Identifies the campaign, a checkpoint with another key is not resumed.
+     *
+     * @param cp    the class parser of the chain
+     * @return      the key
+     */
+    static String key(ClassParser cp) {
+        return Config.SEED_CLASS + ":" + Arrays.hashCode(cp.seedBytecode) + ":" + cp.insnList.size() + ":" + Config.CHAINS;
+    }
+
+    /**
+     * Saves the state of a chain between two iterations.
+     *
+     * @param file          the checkpoint file
+     * @param cp            the class parser holding the chain state
+     * @param iter          the next iteration of the chain
+     * @param timeOut       the time file of the chain
+     * @throws IOException  throws IOException
+     */
+    public static void save(File file, ClassParser cp, int iter, FileOutputStream timeOut) throws IOException {
+        cp.resultOut.getFD().sync();
+        timeOut.getFD().sync();
+        if (cp.journal != null) {
+            cp.journal.sync();
+        }
+        long seed = cp.rand.nextLong();
+        cp.rand = new SplittableRandom(seed);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        out.writeInt(MAGIC);
+        out.writeUTF(key(cp));
+        out.writeInt(iter);
+        out.writeLong(cp.resultOut.getChannel().position());
+        out.writeLong(timeOut.getChannel().position());
+        out.writeLong(seed);
+        out.writeInt(cp.chainMutationCount);
+        out.writeInt(cp.mutationCount);
+        out.writeDouble(cp.curCoverSeedVal);
+        writeBits(out, cp.curLivecodeSet);
+        out.writeBoolean(cp.curLivecodeExited);
+        writeBits(out, cp.totalLivecodeSet.toBitSet());
+
+        ArrayList<Method> mutated = new ArrayList<>();
+        for (Method method : cp.methodDictionary.values()) {
+            if (method.mutationCount != 1 || !method.mutationList.isEmpty()) {
+                mutated.add(method);
+            }
+        }
+        out.writeInt(mutated.size());
+        for (Method method : mutated) {
+            out.writeUTF(method.methodName);
+            out.writeInt(method.mutationCount);
+            out.writeInt(method.mutationList.size());
+            for (MutationStmt ms : method.mutationList) {
+                out.writeInt(ms.ID);
+                out.writeInt(ms.REMOVE);
+                out.writeInt(ms.HI);
+                out.writeInt(ms.HP);
+                out.writeInt(ms.TPS.size());
+                for (int tp : ms.TPS) {
+                    out.writeInt(tp);
+                }
+            }
+            out.writeInt(method.tpSet.size());
+            for (int tp : method.tpSet) {
+                out.writeInt(tp);
+            }
+            out.writeInt(method.mutationDictionary.size());
+            for (Map.Entry<Integer, ArrayList<MutationStmt>> e : method.mutationDictionary.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeInt(e.getValue().size());
+                for (MutationStmt ms : e.getValue()) {
+                    // every mutation in the dictionary is also in the list
+                    out.writeInt(indexOf(method.mutationList, ms));
+                }
+            }
+        }
+        out.flush();
+        fos.getFD().sync();
+        out.close();
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static int indexOf(ArrayList<MutationStmt> list, MutationStmt ms) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == ms) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long w : words) {
+            out.writeLong(w);
+        }
+    }
+
+    static BitSet readBits(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Restores the state of a chain. The chain must have parsed the seed; nothing is changed if the
+     * checkpoint cannot be used.
+     *
+     * @param file  the checkpoint file
+     * @param cp    the class parser of the chain
+     * @return      the checkpoint, or null if it is missing, of another campaign or unreadable
+     */
+    public static Checkpoint load(File file, ClassParser cp) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(key(cp))) {
+                return null;
+            }
+            Checkpoint c = new Checkpoint();
+            c.iter = in.readInt();
+            c.resultLength = in.readLong();
+            c.timeLength = in.readLong();
+            long seed = in.readLong();
+            int chainMutationCount = in.readInt();
+            int mutationCount = in.readInt();
+            double curCoverSeedVal = in.readDouble();
+            BitSet curLivecodeSet = readBits(in);
+            boolean curLivecodeExited = in.readBoolean();
+            BitSet totalLivecodeSet = readBits(in);
+
+            ArrayList<Method> mutated = new ArrayList<>();
+            int methodCount = in.readInt();
+            for (int i = 0; i < methodCount; i++) {
+                String methodName = in.readUTF();
+                Method method = cp.methodDictionary.get(methodName);
+                if (method == null) {
+                    return null;
+                }
+                Method restored = new Method(methodName);
+                restored.mutationCount = in.readInt();
+                int listSize = in.readInt();
+                for (int j = 0; j < listSize; j++) {
+                    int id = in.readInt();
+                    int remove = in.readInt();
+                    int hi = in.readInt();
+                    int hp = in.readInt();
+                    ArrayList<Integer> tps = new ArrayList<>();
+                    int tpCount = in.readInt();
+                    for (int k = 0; k < tpCount; k++) {
+                        tps.add(in.readInt());
+                    }
+                    restored.mutationList.add(new MutationStmt(methodName, hi, hp, tps, id, remove));
+                }
+                int tpSetSize = in.readInt();
+                for (int j = 0; j < tpSetSize; j++) {
+                    restored.tpSet.add(in.readInt());
+                }
+                int hpCount = in.readInt();
+                for (int j = 0; j < hpCount; j++) {
+                    int hp = in.readInt();
+                    ArrayList<MutationStmt> msList = new ArrayList<>();
+                    int count = in.readInt();
+                    for (int k = 0; k < count; k++) {
+                        msList.add(restored.mutationList.get(in.readInt()));
+                    }
+                    restored.mutationDictionary.put(hp, msList);
+                }
+                mutated.add(restored);
+            }
+
+            // everything was read, apply it
+            for (Method restored : mutated) {
+                Method method = cp.methodDictionary.get(restored.methodName);
+                method.mutationCount = restored.mutationCount;
+                method.mutationList = restored.mutationList;
+                method.tpSet = restored.tpSet;
+                method.mutationDictionary = restored.mutationDictionary;
+            }
+            cp.rand = new SplittableRandom(seed);
+            cp.chainMutationCount = chainMutationCount;
+            cp.mutationCount = mutationCount;
+            cp.curCoverSeedVal = curCoverSeedVal;
+            cp.curLivecodeSet = curLivecodeSet;
+            cp.curLivecodeExited = curLivecodeExited;
+            cp.totalLivecodeSet.or(totalLivecodeSet);
+            return c;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cuts a file back to the length it had at a checkpoint.
+     *
+     * @param file          the file
+     * @param length        its length at the checkpoint
+     * @throws IOException  throws IOException
+     */
+    public static void truncate(File file, long length) throws IOException {
+        if (file.exists() && file.length() > length) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+            raf.close();
+        }
+    }
+}
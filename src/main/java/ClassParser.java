@@ -1,10 +1,10 @@
 import org.objectweb.asm.commons.LocalVariablesSorter;
-import org.apache.commons.io.FileUtils;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.io.*;
-import java.net.Socket;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -19,16 +19,33 @@ import java.lang.instrument.*;
 public class ClassParser {
     public ClassVisitor parsiveCV;
 
+    public String className;                                // internal name of the parsed class
+    public File baseOverlay;                                // current classes run behind a forked mutant, may be null
     public int methodCount;
     public int mutationCount;
     public Hashtable<String, Method> methodDictionary;
-    public HashSet<String> seedInsnSet;
-    public HashSet<String> totalLivecodeSet;
-    public ArrayList<String> curLivecodeList;
+    public ArrayList<InsnStmt> insnList;                    // insn id -> seed insn, ids are also probe slots
+    public Hashtable<String, ArrayList<InsnStmt[]>> insnTable;  // method name -> insn index -> seed insns
+    public SharedCoverage totalLivecodeSet;                 // shared by all chains of the campaign
+    public BitSet curLivecodeSet;
+    public boolean curLivecodeExited;                       // curLivecodeSet is of a run that exited by itself, not one cut short
+    public BitSet seedLivecode;                             // livecode of the seed run
     public double curCoverSeedVal;
-    public Hashtable<String, InsnStmt> insnDict;
-
-    public Hashtable<String, Hashtable<String, Label>> methodLabelDictionary;
+    public Hashtable<String, InsnStmt> insnDict;            // identifier -> seed insn, only for printed livecode
+    public byte[] seedBytecode;                             // seed class as parsed, every mutant starts from it
+    public byte[] instrumentedSeed;                         // instrumented seed, unmutated methods are copied from it
+    public int chainId;
+    public int chainMutationCount;
+    public SplittableRandom rand;                           // split from the campaign seed
+    public FileOutputStream resultOut;                      // results of the chain, appended as they are decided
+    public MutationJournal journal;                         // mutants of the chain, may be null
+
+    public LatencyTracker latency;                  // run times of normal runs, shared by all chains
+    public LatencyTracker jarLatency;
+    public MutantCache cache;                       // results of earlier mutant runs, shared by all chains, may be null
+
+    public ThreadLocal<AgentClient> agentClient;   // one server per worker thread
+    public ArrayList<AgentClient> agentClients;
 
     /**
      * Used to parse the seed class.
@@ -38,6 +55,7 @@ public class ClassParser {
         InsnStmt curInsn;
         int insnCount;
         int labelCount;
+        boolean atLabel;
 
         public ParsiveMethodVisitor(String methodName) {
             super(Opcodes.ASM9);
@@ -47,13 +65,39 @@ public class ClassParser {
             curInsn = null;
             insnCount = 0;
             labelCount = -1;
+            atLabel = false;
         }
 
         public void record(InsnStmt insn) {
-            seedInsnSet.add(insn.identifier());
+            // equal identifiers share an id, the last one recorded is kept as the seed insn
+            InsnStmt seen = insnDict.get(insn.identifier());
+            if(seen == null) {
+                insn.id = insnList.size();
+                insnList.add(insn);
+            } else {
+                insn.id = seen.id;
+                insnList.set(insn.id, insn);
+            }
             insnDict.put(insn.identifier(), insn);
+
+            ArrayList<InsnStmt[]> table = insnTable.get(methodName);
+            if(table == null) {
+                table = new ArrayList<>();
+                insnTable.put(methodName, table);
+            }
+            if(insnCount < table.size()) {
+                InsnStmt[] candidates = Arrays.copyOf(table.get(insnCount), table.get(insnCount).length+1);
+                candidates[candidates.length-1] = insn;
+                table.set(insnCount, candidates);
+            } else {
+                table.add(new InsnStmt[] {insn});
+            }
             insnCount += 1;
             methodDictionary.get(methodName).addInsn(insn);
+            if(atLabel) {
+                methodDictionary.get(methodName).labelHeads.set(labelCount, insn.id);
+                atLabel = false;
+            }
         }
 
         public boolean checkDefUse(int opcode) {
@@ -129,6 +173,8 @@ public class ClassParser {
         @Override
         public void visitLabel(Label label) {
             labelCount++;
+            methodDictionary.get(methodName).labelHeads.add(-1);
+            atLabel = true;
             super.visitLabel(label);
         }
 
@@ -180,6 +226,38 @@ public class ClassParser {
             super.visitLocalVariable(name, descriptor, signature, start, end, index);
         }
 
+        // insns that are not recorded, they still end the head of a label
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            atLabel = false;
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            atLabel = false;
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            atLabel = false;
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            atLabel = false;
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            atLabel = false;
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
         public void visitEnd() {
             methodDictionary.get(methodName).labelCount = (labelCount+1);
             methodCount++;
@@ -191,41 +269,65 @@ public class ClassParser {
      */
     private class InstrumentalMethodVisitor extends MethodVisitor {
         String methodName;
+        ArrayList<InsnStmt[]> table;
+        String owner;
+        boolean initProbes;
         int insnCount;
 
         public InstrumentalMethodVisitor(String methodName, MethodVisitor mv) {
             super(Opcodes.ASM9, mv);
             this.methodName = methodName;
+            table = insnTable.get(methodName);
             insnCount = 0;
         }
 
-        public void instrument(String insn) {
-            if(seedInsnSet.contains(insn)) {
-                mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
-                mv.visitLdcInsn(insn);
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        public InstrumentalMethodVisitor(String methodName, String owner, boolean initProbes, MethodVisitor mv) {
+            this(methodName, mv);
+            this.owner = owner;
+            this.initProbes = initProbes;
+        }
+
+        public void instrument(String insnName) {
+            int id = lookupInsn(table, insnCount, insnName);
+            if(id >= 0) {
+                if(Config.PROBE_MODE) {
+                    // probes[id] = 1
+                    mv.visitFieldInsn(Opcodes.GETSTATIC, owner, Config.PROBE_FIELD, "[B");
+                    pushInt(mv, id);
+                    mv.visitInsn(Opcodes.ICONST_1);
+                    mv.visitInsn(Opcodes.BASTORE);
+                } else {
+                    mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+                    mv.visitLdcInsn(insnList.get(id).identifier());
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+                }
                 insnCount += 1;
             }
         }
 
+        @Override
+        public void visitCode() {
+            mv.visitCode();
+            if(initProbes) {
+                initProbes(mv, owner);
+            }
+        }
+
         @Override
         public void visitIincInsn(int var, int increment) {
-            InsnStmt is = new InsnStmt("IincInsn", var+" "+increment, methodName, insnCount, true);
-            instrument(is.identifier());
+            instrument("IincInsn");
             mv.visitIincInsn(var, increment);
         }
 
         @Override
         public void visitInsn(int opcode) {
-            InsnStmt is = new InsnStmt("Insn", opcode+"", methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("Insn");
             mv.visitInsn(opcode);
         }
 
         @Override
         public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
-            InsnStmt is = new InsnStmt("InvokeDynamicInsn", name+" "+descriptor+" "+bootstrapMethodHandle+" "+ Arrays.toString(bootstrapMethodArguments), methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("InvokeDynamicInsn");
             mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
         }
 
@@ -238,8 +340,7 @@ public class ClassParser {
 
         @Override
         public void visitLdcInsn(Object value) {
-            InsnStmt is = new InsnStmt("LdcInsn", value.toString(), methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("LdcInsn");
             mv.visitLdcInsn(value);
         }
 
@@ -252,15 +353,13 @@ public class ClassParser {
 
         @Override
         public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-            InsnStmt is = new InsnStmt("MethodInsn", opcode+" "+owner+" "+name+" "+descriptor+" "+isInterface, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("MethodInsn");
             mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
         }
 
         @Override
         public void visitMultiANewArrayInsn(String descriptor, int numDimension) {
-            InsnStmt is = new InsnStmt("MultiANewArrayInsn", descriptor+" "+numDimension, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("MultiANewArrayInsn");
             mv.visitMultiANewArrayInsn(descriptor, numDimension);
         }
 
@@ -280,28 +379,86 @@ public class ClassParser {
 
         @Override
         public void visitTypeInsn(int opcode, String type) {
-            InsnStmt is = new InsnStmt("TypeInsn", opcode+" "+type, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("TypeInsn");
             mv.visitTypeInsn(opcode, type);
         }
 
         @Override
         public void visitVarInsn(int opcode, int var) {
-            InsnStmt is = new InsnStmt("VarInsn", opcode+" "+var, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("VarInsn");
             mv.visitVarInsn(opcode, var);
         }
     }
     private class InstrumentalClassVisitor extends ClassVisitor {
+        String owner;
+        boolean hasClinit;
+
         public InstrumentalClassVisitor(ClassVisitor cv) {
             super(Opcodes.ASM9, cv);
+            hasClinit = false;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            owner = name;
+            cv.visit(version, access, name, signature, superName, interfaces);
         }
 
         @Override
         public MethodVisitor visitMethod(int access, String name,
                                          String desc, String signature, String[] exceptions) {
             MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
-            return new ClassParser.InstrumentalMethodVisitor(name, mv);
+            boolean isClinit = name.equals("<clinit>");
+            hasClinit = hasClinit || isClinit;
+            return new ClassParser.InstrumentalMethodVisitor(name, owner, Config.PROBE_MODE && isClinit, mv);
+        }
+
+        @Override
+        public void visitEnd() {
+            if(Config.PROBE_MODE) {
+                cv.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+                        Config.PROBE_FIELD, "[B", null, null).visitEnd();
+                if(!hasClinit) {
+                    MethodVisitor mv = cv.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+                    mv.visitCode();
+                    initProbes(mv, owner);
+                    mv.visitInsn(Opcodes.RETURN);
+                    mv.visitMaxs(0, 0);
+                    mv.visitEnd();
+                }
+            }
+            cv.visitEnd();
+        }
+    }
+
+    /**
+     * Emits the static initialization of the probe array: PROBE_FIELD = CoverageProbe.register(owner, size).
+     *
+     * @param mv        visitor of the static initializer
+     * @param owner     internal name of the instrumented class
+     */
+    public void initProbes(MethodVisitor mv, String owner) {
+        mv.visitLdcInsn(owner);
+        pushInt(mv, insnList.size());
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, "CoverageProbe", "register", "(Ljava/lang/String;I)[B", false);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, owner, Config.PROBE_FIELD, "[B");
+    }
+
+    /**
+     * Pushes an int constant with the shortest instruction.
+     *
+     * @param mv        method visitor
+     * @param value     the constant
+     */
+    public static void pushInt(MethodVisitor mv, int value) {
+        if(value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
         }
     }
 
@@ -311,107 +468,105 @@ public class ClassParser {
     private class LabelingMethodVisitor extends MethodVisitor {
         MutationStmt mutationStmt;
         String methodName;
+        ArrayList<InsnStmt[]> table;
         int insnCount;
         int mutationCount;
-        Hashtable<String, Label> labelDictionary;
+        Hashtable<Integer, Label> labelDictionary;
+        Hashtable<String, Hashtable<Integer, Label>> methodLabelDictionary;
 
-        public LabelingMethodVisitor(String methodName, MutationStmt ms, MethodVisitor mv) {
+        public LabelingMethodVisitor(String methodName, MutationStmt ms, Hashtable<String, Hashtable<Integer, Label>> methodLabelDictionary, MethodVisitor mv) {
             super(Opcodes.ASM9, mv);
             this.methodName = methodName;
+            table = insnTable.get(methodName);
             insnCount = 0;
             mutationCount = 0;
             labelDictionary = new Hashtable<>();
+            this.methodLabelDictionary = methodLabelDictionary;
             mutationStmt = ms;
         }
 
-        public void instrument(String insn) {
-            if(seedInsnSet.contains(insn)) {
+        public int instrument(String insnName) {
+            int id = lookupInsn(table, insnCount, insnName);
+            if(id >= 0) {
                 insnCount += 1;
             }
+            return id;
         }
 
-        public void instrumentLabel(InsnStmt is) {
+        public void instrumentLabel(int id) {
             Label l = new Label();
             mv.visitLabel(l);
-            labelDictionary.put(is.identifier(), l);
+            labelDictionary.put(id, l);
         }
 
         @Override
         public void visitIincInsn(int var, int increment) {
-            InsnStmt is = new InsnStmt("IincInsn", var+" "+increment, methodName, insnCount, true);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier()) || mutationStmt.TPS.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("IincInsn");
+            if(methodDictionary.get(methodName).tpSet.contains(id) || mutationStmt.TPS.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitIincInsn(var, increment);
         }
 
         @Override
         public void visitInsn(int opcode) {
-            InsnStmt is = new InsnStmt("Insn", opcode+"", methodName, insnCount, false);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("Insn");
+            if(methodDictionary.get(methodName).tpSet.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitInsn(opcode);
         }
 
         @Override
         public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
-            InsnStmt is = new InsnStmt("InvokeDynamicInsn", name+" "+descriptor+" "+bootstrapMethodHandle+" "+ Arrays.toString(bootstrapMethodArguments), methodName, insnCount, false);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("InvokeDynamicInsn");
+            if(methodDictionary.get(methodName).tpSet.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
         }
 
         @Override
         public void visitLdcInsn(Object value) {
-            InsnStmt is = new InsnStmt("LdcInsn", value.toString(), methodName, insnCount, false);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("LdcInsn");
+            if(methodDictionary.get(methodName).tpSet.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitLdcInsn(value);
         }
 
         @Override
         public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-            InsnStmt is = new InsnStmt("MethodInsn", opcode+" "+owner+" "+name+" "+descriptor+" "+isInterface, methodName, insnCount, false);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("MethodInsn");
+            if(methodDictionary.get(methodName).tpSet.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
         }
 
         @Override
         public void visitMultiANewArrayInsn(String descriptor, int numDimension) {
-            InsnStmt is = new InsnStmt("MultiANewArrayInsn", descriptor+" "+numDimension, methodName, insnCount, false);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("MultiANewArrayInsn");
+            if(methodDictionary.get(methodName).tpSet.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitMultiANewArrayInsn(descriptor, numDimension);
         }
 
         @Override
         public void visitTypeInsn(int opcode, String type) {
-            InsnStmt is = new InsnStmt("TypeInsn", opcode+" "+type, methodName, insnCount, false);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("TypeInsn");
+            if(methodDictionary.get(methodName).tpSet.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitTypeInsn(opcode, type);
         }
 
         @Override
         public void visitVarInsn(int opcode, int var) {
-            InsnStmt is = new InsnStmt("VarInsn", opcode+" "+var, methodName, insnCount, false);
-            instrument(is.identifier());
-            if(methodDictionary.get(methodName).tpSet.contains(is.identifier())) {
-                instrumentLabel(is);
+            int id = instrument("VarInsn");
+            if(methodDictionary.get(methodName).tpSet.contains(id)) {
+                instrumentLabel(id);
             }
             mv.visitVarInsn(opcode, var);
         }
@@ -423,6 +578,7 @@ public class ClassParser {
     }
     private class LabelingClassVisitor extends ClassVisitor {
         public MutationStmt mutationStmt;
+        public Hashtable<String, Hashtable<Integer, Label>> methodLabelDictionary;  // of this pass only, mutants are generated concurrently
         public LabelingClassVisitor(ClassVisitor cv, MutationStmt ms) {
             super(Opcodes.ASM9, cv);
             mutationStmt = ms;
@@ -434,7 +590,7 @@ public class ClassParser {
                                          String desc, String signature, String[] exceptions) {
             MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
             if(methodDictionary.get(name).mutationCount > 1 || mutationStmt.METHOD.equals(name)) {
-                return new ClassParser.LabelingMethodVisitor(name, mutationStmt, mv);
+                return new ClassParser.LabelingMethodVisitor(name, mutationStmt, methodLabelDictionary, mv);
             } else {
                 return mv;
             }
@@ -442,7 +598,8 @@ public class ClassParser {
     }
 
     /**
-     * Used to add loopcount variable to a method.
+     * Used to add loopcount variable to a method. Only reads the seed model, batches generate mutants
+     * concurrently.
      */
     private class VariableMethodAdapter extends LocalVariablesSorter {
         MutationStmt mutationStmt;
@@ -484,12 +641,6 @@ public class ClassParser {
 //            }
         }
 
-        @Override
-        public void visitEnd() {
-            methodDictionary.get(methodName).variableCount = varCount;
-            super.visitEnd();
-        }
-
         @Override
         public void visitMaxs(int maxStack, int maxLocals){
             super.visitMaxs(maxStack + 4*varCount, maxLocals);
@@ -506,7 +657,7 @@ public class ClassParser {
         public MethodVisitor visitMethod(int access, String name,
                                          String desc, String signature, String[] exceptions) {
             MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
-            if(methodDictionary.get(name).mutationCount > 1 || mutationStmt.METHOD.equals(name)) {
+            if(isMutated(name, mutationStmt)) {
                 return new ClassParser.VariableMethodAdapter(access, desc, mv, name, mutationStmt);
             } else {
                 return mv;
@@ -520,6 +671,7 @@ public class ClassParser {
     private class MutatingMethodVisitor extends MethodVisitor {
         MutationStmt mutationStmt;
         String methodName;
+        ArrayList<InsnStmt[]> table;
         int insnCount;
         int mutationCount;
         Label[] labelList;
@@ -531,6 +683,7 @@ public class ClassParser {
         public MutatingMethodVisitor(String methodName, MutationStmt ms, MethodVisitor mv) {
             super(Opcodes.ASM9, mv);
             this.methodName = methodName;
+            table = insnTable.get(methodName);
             insnCount = 0;
             mutationCount = 0;
             mutationStmt = ms;
@@ -541,8 +694,8 @@ public class ClassParser {
             skidLabelFlag = false;
         }
 
-        public void instrument(String insn) {
-            if(seedInsnSet.contains(insn)) {
+        public void instrument(String insnName) {
+            if(lookupInsn(table, insnCount, insnName) >= 0) {
                 insnCount += 1;
             }
         }
@@ -560,7 +713,7 @@ public class ClassParser {
                 Label l1 = new Label();
                 mv.visitJumpInsn(Opcodes.IFLE, l1);             // if loopcount greater than 0
                 if (mutationStmt.HI == Opcodes.GOTO) {
-                    int idx = insnDict.get(mutationStmt.TPS.get(0)).labelIdx;
+                    int idx = insnList.get(mutationStmt.TPS.get(0)).labelIdx;
                     if(idx < labelList.length && idx >= 0) {
                         mv.visitJumpInsn(Opcodes.GOTO, labelList[idx]);
                     }
@@ -575,7 +728,7 @@ public class ClassParser {
                     }
                     Label[] labels = new Label[mutationStmt.TPS.size()];
                     int idx = 0;
-                    for (String tp : mutationStmt.labelDict.keySet()) {
+                    for (int tp : mutationStmt.labelDict.keySet()) {
                         labels[idx] = mutationStmt.getLabel(tp);
                         idx += 1;
                     }
@@ -583,7 +736,7 @@ public class ClassParser {
                 } else if (mutationStmt.HI == Opcodes.TABLESWITCH) {
                     Label[] labels = new Label[mutationStmt.TPS.size()];
                     int idx = 0;
-                    for (String tp : mutationStmt.labelDict.keySet()) {
+                    for (int tp : mutationStmt.labelDict.keySet()) {
                         labels[idx] = mutationStmt.getLabel(tp);
                         idx += 1;
                     }
@@ -604,7 +757,7 @@ public class ClassParser {
                         Label l1 = new Label();
                         mv.visitJumpInsn(Opcodes.IFLE, l1);             // if loopcount greater than 0
                         if (ms.HI == Opcodes.GOTO) {
-                            mv.visitJumpInsn(Opcodes.GOTO, labelList[insnDict.get(ms.TPS.get(0)).labelIdx]);
+                            mv.visitJumpInsn(Opcodes.GOTO, labelList[insnList.get(ms.TPS.get(0)).labelIdx]);
                         } else if (ms.HI == Opcodes.ATHROW) {
                             mv.visitInsn(Opcodes.ATHROW);
                         } else if (ms.HI == Opcodes.RETURN) {
@@ -616,7 +769,7 @@ public class ClassParser {
                             }
                             Label[] labels = new Label[ms.TPS.size()];
                             int idx = 0;
-                            for (String tp : ms.labelDict.keySet()) {
+                            for (int tp : ms.labelDict.keySet()) {
                                 labels[idx] = ms.getLabel(tp);
                                 idx += 1;
                             }
@@ -624,7 +777,7 @@ public class ClassParser {
                         } else if (ms.HI == Opcodes.TABLESWITCH) {
                             Label[] labels = new Label[ms.TPS.size()];
                             int idx = 0;
-                            for (String tp : ms.labelDict.keySet()) {
+                            for (int tp : ms.labelDict.keySet()) {
                                 labels[idx] = ms.getLabel(tp);
                                 idx += 1;
                             }
@@ -649,8 +802,7 @@ public class ClassParser {
 
         @Override
         public void visitIincInsn(int var, int increment) {
-            InsnStmt is = new InsnStmt("IincInsn", var+" "+increment, methodName, insnCount, true);
-            instrument(is.identifier());
+            instrument("IincInsn");
             //instrumentLabel(is.identifier());
 //            if(methodDictionary.get(methodName).mutationDictionary.containsKey(is.identifier()) || mutationStmt.HP.equals(is.identifier())) {
 //                mutate(is.identifier());
@@ -660,8 +812,7 @@ public class ClassParser {
 
         @Override
         public void visitInsn(int opcode) {
-            InsnStmt is = new InsnStmt("Insn", opcode+"", methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("Insn");
             //instrumentLabel(is.identifier());
 //            if(methodDictionary.get(methodName).mutationDictionary.containsKey(is.identifier()) || mutationStmt.HP.equals(is.identifier())) {
 //                mutate(is.identifier());
@@ -671,8 +822,7 @@ public class ClassParser {
 
         @Override
         public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
-            InsnStmt is = new InsnStmt("InvokeDynamicInsn", name+" "+descriptor+" "+bootstrapMethodHandle+" "+ Arrays.toString(bootstrapMethodArguments), methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("InvokeDynamicInsn");
             //instrumentLabel(is.identifier());
 //            if(methodDictionary.get(methodName).mutationDictionary.containsKey(is.identifier()) || mutationStmt.HP.equals(is.identifier())) {
 //                mutate(is.identifier());
@@ -699,8 +849,7 @@ public class ClassParser {
 
         @Override
         public void visitLdcInsn(Object value) {
-            InsnStmt is = new InsnStmt("LdcInsn", value.toString(), methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("LdcInsn");
             //instrumentLabel(is.identifier());
 //            if(methodDictionary.get(methodName).mutationDictionary.containsKey(is.identifier()) || mutationStmt.HP.equals(is.identifier())) {
 //                mutate(is.identifier());
@@ -710,8 +859,7 @@ public class ClassParser {
 
         @Override
         public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-            InsnStmt is = new InsnStmt("MethodInsn", opcode+" "+owner+" "+name+" "+descriptor+" "+isInterface, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("MethodInsn");
             //instrumentLabel(is.identifier());
 //            if(methodDictionary.get(methodName).mutationDictionary.containsKey(is.identifier()) || mutationStmt.HP.equals(is.identifier())) {
 //                mutate(is.identifier());
@@ -721,8 +869,7 @@ public class ClassParser {
 
         @Override
         public void visitMultiANewArrayInsn(String descriptor, int numDimension) {
-            InsnStmt is = new InsnStmt("MultiANewArrayInsn", descriptor+" "+numDimension, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("MultiANewArrayInsn");
             //instrumentLabel(is.identifier());
 //            if(methodDictionary.get(methodName).mutationDictionary.containsKey(is.identifier()) || mutationStmt.HP.equals(is.identifier())) {
 //                mutate(is.identifier());
@@ -732,8 +879,7 @@ public class ClassParser {
 
         @Override
         public void visitTypeInsn(int opcode, String type) {
-            InsnStmt is = new InsnStmt("TypeInsn", opcode+" "+type, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("TypeInsn");
             //instrumentLabel(is.identifier());
 //            if(methodDictionary.get(methodName).mutationDictionary.containsKey(is.identifier()) || mutationStmt.HP.equals(is.identifier())) {
 //                mutate(is.identifier());
@@ -743,8 +889,7 @@ public class ClassParser {
 
         @Override
         public void visitVarInsn(int opcode, int var) {
-            InsnStmt is = new InsnStmt("VarInsn", opcode+" "+var, methodName, insnCount, false);
-            instrument(is.identifier());
+            instrument("VarInsn");
             if (opcode == Opcodes.ISTORE && loopVarCount < loopVar.length) {
                 loopVar[loopVarCount] = var;
             }
@@ -766,14 +911,13 @@ public class ClassParser {
         public MutatingClassVisitor(ClassVisitor cv, MutationStmt ms) {
             super(Opcodes.ASM9, cv);
             mutationStmt = ms;
-            methodLabelDictionary = new Hashtable<>();
         }
 
         @Override
         public MethodVisitor visitMethod(int access, String name,
                                          String desc, String signature, String[] exceptions) {
             MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
-            if(methodDictionary.get(name).mutationCount > 1 || mutationStmt.METHOD.equals(name)) {
+            if(isMutated(name, mutationStmt)) {
                 return new ClassParser.MutatingMethodVisitor(name, mutationStmt, mv);
             } else {
                 return mv;
@@ -781,7 +925,80 @@ public class ClassParser {
         }
     }
 
+    /**
+     * Used to write the plain mutant. Methods without mutations go straight to the writer, which copies
+     * them from the seed byte-for-byte. Mutated methods are kept so that they can also be instrumented.
+     */
+    private class MutantClassVisitor extends ClassVisitor {
+        public MutationStmt mutationStmt;
+        public ArrayList<MethodNode> mutatedMethods;
+        public MutantClassVisitor(ClassVisitor cv, MutationStmt ms) {
+            super(Opcodes.ASM9, cv);
+            mutationStmt = ms;
+            mutatedMethods = new ArrayList<>();
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name,
+                                         String desc, String signature, String[] exceptions) {
+            MethodVisitor writer = cv.visitMethod(access, name, desc, signature, exceptions);
+            if(!isMutated(name, mutationStmt)) {
+                return writer;
+            }
+            MethodNode mn = new MethodNode(Opcodes.ASM9, access, name, desc, signature, exceptions) {
+                @Override
+                public void visitEnd() {
+                    accept(writer);
+                }
+            };
+            mutatedMethods.add(mn);
+            return mn;
+        }
+    }
+
+    /**
+     * Used to write the instrumented mutant from the instrumented seed, replacing the mutated methods.
+     */
+    private class InstrumentedMutantClassVisitor extends ClassVisitor {
+        public MutationStmt mutationStmt;
+        public ArrayList<MethodNode> mutatedMethods;
+        String owner;
+        public InstrumentedMutantClassVisitor(ClassVisitor cv, MutationStmt ms, ArrayList<MethodNode> mutatedMethods) {
+            super(Opcodes.ASM9, cv);
+            mutationStmt = ms;
+            this.mutatedMethods = mutatedMethods;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            owner = name;
+            cv.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name,
+                                         String desc, String signature, String[] exceptions) {
+            if(isMutated(name, mutationStmt)) {
+                // dropped, the mutated version is added in visitEnd
+                return null;
+            }
+            return cv.visitMethod(access, name, desc, signature, exceptions);
+        }
+
+        @Override
+        public void visitEnd() {
+            for(MethodNode mn : mutatedMethods) {
+                String[] exceptions = mn.exceptions.toArray(new String[0]);
+                MethodVisitor mv = cv.visitMethod(mn.access, mn.name, mn.desc, mn.signature, exceptions);
+                mn.accept(new InstrumentalMethodVisitor(mn.name, owner, Config.PROBE_MODE && mn.name.equals("<clinit>"), mv));
+            }
+            cv.visitEnd();
+        }
+    }
+
     public ClassParser() {
+        className = Config.SEED_CLASS;
+        baseOverlay = null;
         mutationCount = 0;
         methodDictionary = new Hashtable<>();
         parsiveCV = new ClassVisitor(Opcodes.ASM9) {
@@ -791,10 +1008,21 @@ public class ClassParser {
                 return new ParsiveMethodVisitor(name);
             }
         };
-        seedInsnSet = new HashSet<>();
-        totalLivecodeSet = new HashSet<>();
-        curLivecodeList = new ArrayList<>();
+        insnList = new ArrayList<>();
+        insnTable = new Hashtable<>();
+        totalLivecodeSet = null;
+        curLivecodeSet = new BitSet();
+        curLivecodeExited = false;
+        seedLivecode = new BitSet();
+        chainId = 0;
+        chainMutationCount = 0;
+        rand = new SplittableRandom();
         insnDict = new Hashtable<>();
+        latency = new LatencyTracker();
+        jarLatency = new LatencyTracker();
+        cache = Config.CACHE_SIZE > 0 ? new MutantCache(Config.CACHE_SIZE) : null;
+        agentClient = new ThreadLocal<>();
+        agentClients = new ArrayList<>();
         curCoverSeedVal = 0.0;
     }
 
@@ -805,8 +1033,75 @@ public class ClassParser {
      * @throws IOException  throws IOException
      */
     public void parseClass(InputStream in) throws IOException {
-        ClassReader cr = new ClassReader(in);
+        seedBytecode = readBytes(in);
+        ClassReader cr = new ClassReader(seedBytecode);
+        className = cr.getClassName();
         cr.accept(parsiveCV, 0);
+        totalLivecodeSet = new SharedCoverage(insnList.size());
+        instrumentedSeed = instrumentClass(new ByteArrayInputStream(seedBytecode));
+    }
+
+    /**
+     * Method to check whether a method has to be re-emitted for a mutation.
+     *
+     * @param methodName    name of the method
+     * @param ms            the mutationStmt to apply
+     * @return              true if the method holds a mutation or is the target of ms
+     */
+    public boolean isMutated(String methodName, MutationStmt ms) {
+        Method method = methodDictionary.get(methodName);
+        return ms.METHOD.equals(methodName) || (method != null && method.mutationCount > 1);
+    }
+
+    /**
+     * Method to get the id of a new mutation. Ids are unique over all chains and do not depend on
+     * how the chains interleave.
+     *
+     * @return  the mutation id
+     */
+    public int nextMutationId() {
+        chainMutationCount++;
+        return (chainMutationCount-1) * Config.CHAINS + chainId + 1;
+    }
+
+    /**
+     * Method to find the id of a seed instruction, replacing identifier() lookups while visiting.
+     *
+     * @param table     the insnTable entry of the visited method, may be null
+     * @param idx       index of the insn within the method
+     * @param insnName  kind of the insn, as in InsnStmt.insnName
+     * @return          the insn id, or -1 if it is not a seed insn
+     */
+    public int lookupInsn(ArrayList<InsnStmt[]> table, int idx, String insnName) {
+        if(table == null || idx >= table.size()) {
+            return -1;
+        }
+        for(InsnStmt is : table.get(idx)) {
+            if(is.insnName.equals(insnName)) {
+                return is.id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to generate a mutant bytecode from the cached seed in a single pass. Loopcount variables
+     * and mutations are added by one visitor chain. Only mutated methods are re-emitted and have their
+     * frames computed, all other methods are copied from the seed.
+     *
+     * @param ms                the mutationStmt to apply
+     * @param mutatedMethods    receives the mutated methods, may be null
+     * @return                  byte[] representing the mutant class
+     */
+    public byte[] mutateClass(MutationStmt ms, ArrayList<MethodNode> mutatedMethods) {
+        ClassReader cr = new ClassReader(seedBytecode);
+        ClassWriter cw = new HierarchyClassWriter(cr, ClassWriter.COMPUTE_FRAMES);
+        MutantClassVisitor mcv = new MutantClassVisitor(cw, ms);
+        cr.accept(new VariableClassVisitor(new MutatingClassVisitor(mcv, ms), ms), ClassReader.EXPAND_FRAMES);
+        if(mutatedMethods != null) {
+            mutatedMethods.addAll(mcv.mutatedMethods);
+        }
+        return cw.toByteArray();
     }
 
     /**
@@ -817,19 +1112,20 @@ public class ClassParser {
      * @throws IOException  throws IOException
      */
     public byte[] mutateClass(MutationStmt ms) throws IOException {
-        // get seed class
-        InputStream in = new FileInputStream(Config.SEED_DIR+Config.SEED_CLASS+Config.CLASS_EXT);
-
-        // instrument all loopcount variables
-        ClassReader cr = new ClassReader(in);
-        ClassWriter cw = new ClassWriter(cr, ClassWriter.COMPUTE_FRAMES);
-        cr.accept(new VariableClassVisitor(cw, ms), ClassReader.EXPAND_FRAMES);
-
-        // instrument all mutations
-        cr = new ClassReader(cw.toByteArray());
-        cw = new ClassWriter(cr, ClassWriter.COMPUTE_FRAMES);
-        cr.accept(new MutatingClassVisitor(cw, ms), ClassReader.EXPAND_FRAMES);
+        return mutateClass(ms, null);
+    }
 
+    /**
+     * Method to instrument a mutant by replacing the mutated methods of the instrumented seed.
+     *
+     * @param ms                the mutationStmt applied
+     * @param mutatedMethods    the mutated methods, as returned by mutateClass
+     * @return                  byte[] representing the instrumented mutant class
+     */
+    public byte[] instrumentMutant(MutationStmt ms, ArrayList<MethodNode> mutatedMethods) {
+        ClassReader cr = new ClassReader(instrumentedSeed);
+        ClassWriter cw = new HierarchyClassWriter(cr, ClassWriter.COMPUTE_FRAMES);
+        cr.accept(new InstrumentedMutantClassVisitor(cw, ms, mutatedMethods), 0);
         return cw.toByteArray();
     }
 
@@ -842,26 +1138,202 @@ public class ClassParser {
      */
     public byte[] instrumentClass(InputStream in) throws IOException {
         ClassReader cr = new ClassReader(in);
-        ClassWriter cw = new ClassWriter(cr, ClassWriter.COMPUTE_FRAMES);
+        ClassWriter cw = new HierarchyClassWriter(cr, ClassWriter.COMPUTE_FRAMES);
         cr.accept(new InstrumentalClassVisitor(cw), 0);
 
         return cw.toByteArray();
     }
 
-    public void getLivecodeAgent(String filePath, String className) throws IOException {
+    /**
+     * Method to get the livecode of a class from the resident LivecodeAgent server.
+     *
+     * @param filePath      the file path class file is stored
+     * @param className     the name of the class
+     * @return              BitSet of live instruction ids
+     * @throws IOException  throws IOException
+     */
+    public BitSet getLivecodeAgent(String filePath, String className) throws IOException {
         InputStream run_in = new FileInputStream(filePath+className+Config.CLASS_EXT);
-        FileUtils.writeByteArrayToFile(new File(Config.SEED_CLASS+Config.CLASS_EXT), instrumentClass(run_in));
+        byte[] instrumented = instrumentClass(run_in);
         run_in.close();
+        return getLivecodeAgent(instrumented);
+    }
+
+    /**
+     * Method to get the livecode of an instrumented class from the resident LivecodeAgent server.
+     *
+     * @param instrumented  the instrumented class bytes
+     * @return              BitSet of live instruction ids
+     * @throws IOException  throws IOException
+     */
+    public BitSet getLivecodeAgent(byte[] instrumented) throws IOException {
+        return executeAgent(instrumented).livecode;
+    }
+
+    /**
+     * Method to run an instrumented class on the resident LivecodeAgent server.
+     *
+     * @param instrumented  the instrumented class bytes
+     * @return              ExecutionResult holding the livecode and why the run ended
+     * @throws IOException  throws IOException
+     */
+    public ExecutionResult executeAgent(byte[] instrumented) throws IOException {
+        return executeAgent(Collections.singletonMap(className, instrumented));
+    }
+
+    /**
+     * Method to run instrumented classes on the resident LivecodeAgent server, starting from the entry
+     * class of the target.
+     *
+     * @param classes       internal name -> instrumented class bytes
+     * @return              ExecutionResult holding the livecode of this class and why the run ended
+     * @throws IOException  throws IOException
+     */
+    public ExecutionResult executeAgent(Map<String, byte[]> classes) throws IOException {
+        AgentClient client = agentClient.get();
+        if(client == null) {
+            client = new AgentClient();
+            agentClient.set(client);
+            synchronized(agentClients) {
+                agentClients.add(client);
+            }
+        }
+        long timeout = latency.timeout();
+        long start = System.nanoTime();
+        Object event = FuzzEvents.begin(FuzzEvents.TRACE);
+        ArrayList<String> lines = client.run(Config.SEED_CLASS_MAIN, classes, timeout);
+        Metrics.time(Metrics.RUN, start);
+        start = System.nanoTime();
+        ExecutionResult result = agentResult(client, lines, timeout);
+        Metrics.time(Metrics.TRACE, start);
+        FuzzEvents.endTrace(event, result);
+        return result;
+    }
 
-        Socket socket = new Socket("localhost", Config.SERVER_PORT);
-        OutputStream output = socket.getOutputStream();
-        PrintWriter writer = new PrintWriter(output, true);
-        String msg = "loadClass ";
-        msg += System.getProperty("user.dir") + " ";
-        msg += Config.SEED_CLASS + " ";
-        msg += System.getProperty("user.dir")+"\\"+Config.SEED_CLASS+Config.CLASS_EXT;
+    /**
+     * Method to turn the response to an agent run into an ExecutionResult.
+     *
+     * @param client    the client that read the response
+     * @param lines     live instructions printed by the class
+     * @param timeout   timeout the run was given in ms
+     * @return          ExecutionResult holding the livecode and why the run ended
+     */
+    public ExecutionResult agentResult(AgentClient client, ArrayList<String> lines, long timeout) {
+        BitSet executedInsn = new BitSet(insnList.size());
+        if(Config.PROBE_MODE) {
+            executedInsn = getLivecodeFromProbes(client.lastProbes);
+        } else {
+            for(String line : lines) {
+                addLivecode(executedInsn, line);
+            }
+        }
+        ExecutionResult result = new ExecutionResult(executedInsn, ExecutionResult.EXITED);
+        result.probes = client.lastProbes;
+        if(client.lastStatus.equals(LivecodeAgent.STATUS_TIMEOUT)) {
+            result.outcome = ExecutionResult.TIMEOUT;
+        }
+        result.time = client.lastTime;
+        result.timeout = timeout;
+        result.traceLength = lines.size();
+        return result;
+    }
+
+    /**
+     * Method to run several instrumented classes in one forked LivecodeAgent JVM, one after another and
+     * each in its own isolated class loader. A run that times out or breaks the JVM ends the batch.
+     *
+     * @param instrumented  the instrumented class bytes
+     * @return              ExecutionResults in the same order, null for the classes the batch did not reach
+     * @throws IOException  throws IOException
+     */
+    public ArrayList<ExecutionResult> executeBatch(ArrayList<byte[]> instrumented) throws IOException {
+        File root = new File(Config.OVERLAY_DIR);
+        root.mkdirs();
+        File bundle = File.createTempFile("batch", ".bin", root);
+        File results = new File(bundle.getPath() + ".out");
+        File log = new File(bundle.getPath() + ".log");
+        long timeout = latency.timeout();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bundle)));
+        out.writeInt(LivecodeAgent.BATCH_MAGIC);
+        out.writeInt(instrumented.size());
+        for(byte[] bytecode : instrumented) {
+            out.writeUTF(Config.SEED_CLASS_MAIN);
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeLong(timeout);
+        }
+        out.close();
+
+        ArrayList<String> runCmd = new ArrayList<>();
+        runCmd.add(javaBinary());
+        if(!System.getProperty("java.specification.version").startsWith("1.")) {
+            // the exit trap needs a security manager
+            runCmd.add("-Djava.security.manager=allow");
+        }
+        runCmd.addAll(Arrays.asList(Config.LAUNCH_PROFILE));
+        runCmd.add("-cp");
+        runCmd.add(System.getProperty("java.class.path"));
+        runCmd.add(LivecodeAgent.class.getName());
+        runCmd.add(LivecodeAgent.BATCH);
+        runCmd.add(bundle.getPath());
+        runCmd.add(results.getPath());
+
+        ArrayList<ExecutionResult> batch = new ArrayList<>();
+        try {
+            ProcessBuilder pb = new ProcessBuilder(runCmd);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(log);
+            long start = System.nanoTime();
+            Object event = FuzzEvents.begin(FuzzEvents.LAUNCH);
+            Process p = pb.start();
+            FuzzEvents.end(event, "batch of "+instrumented.size());
+            Metrics.time(Metrics.LAUNCH, start);
+            event = FuzzEvents.begin(FuzzEvents.TRACE);
+            // every run is bounded by the harness, this only catches a harness that hangs itself
+            if(!p.waitFor(timeout * instrumented.size() + Config.TIMEOUT_CEILING, TimeUnit.MILLISECONDS)) {
+                p.destroyForcibly();
+                p.waitFor();
+            }
+            AgentClient reader = new AgentClient();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(results)));
+            try {
+                while(batch.size() < instrumented.size()) {
+                    long time = in.readLong();
+                    ArrayList<String> lines = reader.readResponse(in);
+                    reader.lastTime = time;
+                    Metrics.record(Metrics.RUN, time);
+                    long traceStart = System.nanoTime();
+                    batch.add(agentResult(reader, lines, timeout));
+                    Metrics.time(Metrics.TRACE, traceStart);
+                }
+            } catch (IOException e) {
+                // the batch ended early
+            } finally {
+                in.close();
+                FuzzEvents.end(event, batch.size()+" of "+instrumented.size()+" run");
+            }
+        } catch (InterruptedException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            bundle.delete();
+            results.delete();
+            log.delete();
+        }
+        while(batch.size() < instrumented.size()) {
+            batch.add(null);
+        }
+        return batch;
+    }
 
-        writer.println(msg);
+    /**
+     * Shuts down the livecode server if one was started.
+     */
+    public void close() {
+        synchronized(agentClients) {
+            for(AgentClient client : agentClients) {
+                client.close();
+            }
+        }
     }
 
     /**
@@ -869,77 +1341,432 @@ public class ClassParser {
      *
      * @param filePath      the file path class file is stored
      * @param className     the name of the class
-     * @return              ArrayList of live instructions
+     * @return              BitSet of live instruction ids
      * @throws IOException  throws IOException
      */
-    public ArrayList<String> getLivecode(String filePath, String className) throws IOException{
+    public BitSet getLivecode(String filePath, String className) throws IOException{
         InputStream run_in = new FileInputStream(filePath+className+Config.CLASS_EXT);
-        FileUtils.writeByteArrayToFile(new File(Config.SEED_CLASS+Config.CLASS_EXT), instrumentClass(run_in));
+        byte[] instrumented = instrumentClass(run_in);
         run_in.close();
+        return getLivecode(instrumented);
+    }
 
-        ArrayList<String> executedInsn = new ArrayList<>();
-        String runCmd = "java -cp " + Config.JAR_FILE + " " + Config.SEED_CLASS_MAIN;
+    /**
+     * Method to get the livecode of an instrumented class.
+     *
+     * @param instrumented  the instrumented class bytes
+     * @return              BitSet of live instruction ids
+     * @throws IOException  throws IOException
+     */
+    public BitSet getLivecode(byte[] instrumented) throws IOException {
+        return execute(instrumented).livecode;
+    }
 
-        // update jar file
-        String jarCmd = "jar uf " + Config.JAR_FILE + " " + Config.SEED_CLASS+Config.CLASS_EXT;
+    /**
+     * Method to run an instrumented class, on the LivecodeAgent server or in a forked JVM.
+     *
+     * @param instrumented  the instrumented class bytes
+     * @return              ExecutionResult holding the livecode and why the run ended
+     * @throws IOException  throws IOException
+     */
+    public ExecutionResult execute(byte[] instrumented) throws IOException {
+        return execute(Collections.singletonMap(className, instrumented));
+    }
 
-        try {
-            Process jarP = Runtime.getRuntime().exec(jarCmd);
-            if(!jarP.waitFor(5, TimeUnit.SECONDS)) {
-                jarP.destroy();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Method to run instrumented classes in place of their copies in the jar, on the LivecodeAgent server
+     * or in a forked JVM.
+     *
+     * @param classes       internal name -> instrumented class bytes
+     * @return              ExecutionResult holding the livecode of this class and why the run ended
+     * @throws IOException  throws IOException
+     */
+    public ExecutionResult execute(Map<String, byte[]> classes) throws IOException {
+        if(Config.USE_AGENT) {
+            return executeAgent(classes);
         }
+        return executeForked(classes);
+    }
 
-        try {
-            Process p = Runtime.getRuntime().exec(runCmd);
-            if(!p.waitFor(5, TimeUnit.SECONDS)) {
-                p.destroy();
-            }
-
-            final InputStream stdout = p.getInputStream();
+    /**
+     * Used to read the output of a forked run while it is produced. Livecode lines are added to the
+     * livecode set as they arrive, the rest is dropped. In probe mode the livecode comes from the probe
+     * dump, and only the heartbeat counts of this class are read; there is no trace to count.
+     */
+    private class TraceReader extends Thread {
+        final InputStream stdout;
+        final BitSet livecode;
+        volatile long traceLength;
+        volatile int covered;
+        volatile long lastNewLivecode;
+
+        public TraceReader(InputStream stdout, BitSet livecode) {
+            this.stdout = stdout;
+            this.livecode = livecode;
+            traceLength = 0;
+            covered = 0;
+            lastNewLivecode = System.currentTimeMillis();
+            setDaemon(true);
+        }
 
+        @Override
+        public void run() {
             BufferedReader br = new BufferedReader(new InputStreamReader(stdout));
-
             String line;
             try {
                 while ((line = br.readLine()) != null) {
-                    if(line.contains(Config.INSN_ID)){
-                        executedInsn.add(line);
+                    if(Config.PROBE_MODE) {
+                        readHeartbeat(line);
+                        continue;
+                    }
+                    if(!line.contains(Config.INSN_ID)) {
+                        continue;
+                    }
+                    traceLength++;
+                    if(addLivecode(livecode, line)) {
+                        covered++;
+                        lastNewLivecode = System.currentTimeMillis();
                     }
                 }
             } catch (IOException e) {
-                e.printStackTrace();
+                // the run was killed
             } finally {
                 try {
                     br.close();
-                    stdout.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
+        }
+
+        void readHeartbeat(String line) {
+            int sep = line.lastIndexOf(' ');
+            if(!line.startsWith(Config.PROBE_HEARTBEAT) || sep < Config.PROBE_HEARTBEAT.length()
+                    || !line.substring(Config.PROBE_HEARTBEAT.length(), sep).equals(className)) {
+                return;
+            }
+            try {
+                int count = Integer.parseInt(line.substring(sep + 1).trim());
+                if(count > covered) {
+                    covered = count;
+                    lastNewLivecode = System.currentTimeMillis();
+                }
+            } catch (NumberFormatException e) {
+                // target output that looks like a heartbeat
+            }
+        }
+    }
+
+    /**
+     * Method to run an instrumented class in a forked JVM. The output is consumed while the target runs,
+     * and the run is killed as soon as one of the budgets is used up.
+     *
+     * @param instrumented  the instrumented class bytes
+     * @return              ExecutionResult holding the livecode and why the run ended
+     * @throws IOException  throws IOException
+     */
+    public ExecutionResult executeForked(byte[] instrumented) throws IOException {
+        return executeForked(Collections.singletonMap(className, instrumented));
+    }
+
+    /**
+     * Method to run instrumented classes in a forked JVM, in front of the base overlay if there is one.
+     *
+     * @param classes       internal name -> instrumented class bytes
+     * @return              ExecutionResult holding the livecode of this class and why the run ended
+     * @throws IOException  throws IOException
+     */
+    public ExecutionResult executeForked(Map<String, byte[]> classes) throws IOException {
+        BitSet executedInsn = new BitSet(insnList.size());
+        ExecutionResult result = new ExecutionResult(executedInsn, ExecutionResult.EXITED);
+        String classPath = Config.JAR_FILE;
+        File overlay = null;
+        File probeFile = new File(Config.PROBE_FILE);
+
+        long classpathStart = System.nanoTime();
+        if(Config.USE_OVERLAY) {
+            // put the instrumented classes in front of the pristine jar
+            overlay = createOverlay(classes);
+            classPath = overlay.getPath() + File.pathSeparator + Config.JAR_FILE;
+            probeFile = new File(overlay, Config.PROBE_FILE);
+        } else {
+            // update jar file
+            String jarCmd = "jar uf " + Config.JAR_FILE;
+            for(Map.Entry<String, byte[]> e : classes.entrySet()) {
+                writeClassFile(new File(e.getKey()+Config.CLASS_EXT), e.getValue());
+                jarCmd += " " + e.getKey()+Config.CLASS_EXT;
+            }
+            if(Config.PROBE_MODE) {
+                writeClassFile(new File(CoverageProbe.class.getName()+Config.CLASS_EXT), probeRuntime());
+                jarCmd += " " + CoverageProbe.class.getName()+Config.CLASS_EXT;
+            }
+
+            try {
+                long jarStart = System.currentTimeMillis();
+                Process jarP = Runtime.getRuntime().exec(jarCmd);
+                if(!jarP.waitFor(jarLatency.timeout(), TimeUnit.MILLISECONDS)) {
+                    jarP.destroy();
+                } else {
+                    jarLatency.add(System.currentTimeMillis() - jarStart);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        Metrics.time(Metrics.CLASSPATH, classpathStart);
+        probeFile.delete();
+        ArrayList<String> runCmd = new ArrayList<>(Arrays.asList(javaBinary(), "-cp", classPath));
+        if(overlay != null) {
+            // the launch profile, and the CDS archive if there is one
+            runCmd = CdsArchive.command(overlay);
+            if(baseOverlay != null) {
+                // the current versions of the other classes go between the run's classes and the jar,
+                // there is no archive for them
+                runCmd.set(runCmd.indexOf("-cp") + 1, overlay.getPath() + File.pathSeparator + baseOverlay.getPath() + File.pathSeparator + Config.JAR_FILE);
+            }
+        }
+        if(Config.PROBE_MODE) {
+            runCmd.add(1, "-D"+Config.PROBE_PROPERTY+"="+probeFile.getPath());
+        }
+        runCmd.add(Config.SEED_CLASS_MAIN);
+
+        result.timeout = latency.timeout();
+        try {
+            long startTime = System.currentTimeMillis();
+            long start = System.nanoTime();
+            Object event = FuzzEvents.begin(FuzzEvents.LAUNCH);
+            ProcessBuilder pb = new ProcessBuilder(runCmd);
+            pb.redirectErrorStream(true);
+            Process p = pb.start();
+            FuzzEvents.end(event, "started");
+            Metrics.time(Metrics.LAUNCH, start);
+            event = FuzzEvents.begin(FuzzEvents.TRACE);
+            p.getOutputStream().close();
+            TraceReader reader = new TraceReader(p.getInputStream(), executedInsn);
+            reader.start();
+
+            String outcome = null;
+            while(outcome == null && !p.waitFor(Config.POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                long now = System.currentTimeMillis();
+                if(now - startTime > result.timeout) {
+                    outcome = ExecutionResult.TIMEOUT;
+                } else if(reader.traceLength > Config.TRACE_BUDGET) {
+                    outcome = ExecutionResult.TRACE_BUDGET;
+                } else if(reader.covered >= insnList.size()) {
+                    outcome = ExecutionResult.COVERED;
+                } else if(reader.covered > 0 && now - reader.lastNewLivecode > Config.STALL_BUDGET) {
+                    outcome = ExecutionResult.STALLED;
+                }
+            }
+            if(outcome != null) {
+                // SIGTERM, so that the shutdown hook still dumps the probes
+                p.destroy();
+                if(!p.waitFor(Config.POLL_INTERVAL * 10, TimeUnit.MILLISECONDS)) {
+                    p.destroyForcibly();
+                }
+                result.outcome = outcome;
+            }
+            reader.join();
+            result.time = System.currentTimeMillis() - startTime;
+            result.traceLength = reader.traceLength;
+            Metrics.time(Metrics.RUN, start);
+            FuzzEvents.endTrace(event, result);
+
+            start = System.nanoTime();
+            if(Config.PROBE_MODE) {
+                // the probes are dumped by a shutdown hook, the process has ended so the file is complete
+                if(probeFile.exists()) {
+                    InputStream probe_in = new BufferedInputStream(new FileInputStream(probeFile));
+                    result.probes = CoverageProbe.read(probe_in);
+                    result.livecode = getLivecodeFromProbes(result.probes);
+                    probe_in.close();
+                }
+            }
+            Metrics.time(Metrics.TRACE, start);
 
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            deleteOverlay(overlay);
         }
 
-        return executedInsn;
+        return result;
     }
 
-    public void generateMutant(MutationStmt ms) throws IOException {
-        byte[] mutantBytecode = mutateClass(ms);
-        FileUtils.writeByteArrayToFile(new File(Config.MUTANT_DIR+ms.CLASSNAME+Config.CLASS_EXT), mutantBytecode);
+    /**
+     * Method to mark a printed livecode line in a livecode set.
+     *
+     * @param livecode      the livecode set
+     * @param line          a line of output from the instrumented class
+     * @return              true if the line added a new live insn
+     */
+    public boolean addLivecode(BitSet livecode, String line) {
+        if(line.contains(Config.INSN_ID)) {
+            InsnStmt is = insnDict.get(line.trim());
+            if(is != null && !livecode.get(is.id)) {
+                livecode.set(is.id);
+                return true;
+            }
+        }
+        return false;
     }
 
-    public double coverSeed(ArrayList<String> livecode) {
-        double x = seedInsnSet.size();
-        double y = 0.0;
-        for(String insn : livecode) {
-            if(seedInsnSet.contains(insn)) {
-                y += 1.0;
-            }
+    /**
+     * Method to turn a probe dump into livecode. Probe slots are insn ids.
+     *
+     * @param coverage      class name -> covered probe slots, as read by CoverageProbe.read
+     * @return              BitSet of live instruction ids
+     */
+    public BitSet getLivecodeFromProbes(Map<String, BitSet> coverage) {
+        BitSet slots = coverage.get(className);
+        if(slots == null) {
+            return new BitSet(insnList.size());
+        }
+        return slots.get(0, insnList.size());
+    }
+
+    /**
+     * Method to get the java binary of the running JVM. Forked runs use it rather than the java on the
+     * PATH, so they run on the JVM the launch options, the CDS archive and the caches were made for.
+     *
+     * @return  path of the java binary
+     */
+    public static String javaBinary() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    /**
+     * Method to get the bytes of the probe runtime, which has to be on the classpath of the target.
+     *
+     * @return              byte[] of CoverageProbe
+     * @throws IOException  throws IOException
+     */
+    public static byte[] probeRuntime() throws IOException {
+        InputStream in = CoverageProbe.class.getResourceAsStream(CoverageProbe.class.getName()+Config.CLASS_EXT);
+        byte[] bytecode = readBytes(in);
+        in.close();
+        return bytecode;
+    }
+
+    /**
+     * Method to read a stream to its end.
+     *
+     * @param in            the InputStream
+     * @return              the bytes read
+     * @throws IOException  throws IOException
+     */
+    public static byte[] readBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Method to write a class file, creating parent directories as needed.
+     *
+     * @param file          the class file
+     * @param bytecode      the class bytes
+     * @throws IOException  throws IOException
+     */
+    public static void writeClassFile(File file, byte[] bytecode) throws IOException {
+        if(file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Files.write(file.toPath(), bytecode);
+    }
+
+    /**
+     * Method to create a per-run overlay directory holding a class that shadows its copy in the jar.
+     *
+     * @param bytecode      the class bytes
+     * @return              the overlay directory
+     * @throws IOException  throws IOException
+     */
+    public File createOverlay(byte[] bytecode) throws IOException {
+        return createOverlay(Collections.singletonMap(className, bytecode));
+    }
+
+    /**
+     * Method to create a per-run overlay directory holding classes that shadow their copies in the jar.
+     *
+     * @param classes       internal name -> class bytes
+     * @return              the overlay directory
+     * @throws IOException  throws IOException
+     */
+    public File createOverlay(Map<String, byte[]> classes) throws IOException {
+        File root = new File(Config.OVERLAY_DIR);
+        root.mkdirs();
+        File overlay = Files.createTempDirectory(root.toPath(), "run").toFile();
+        for(Map.Entry<String, byte[]> e : classes.entrySet()) {
+            writeClassFile(new File(overlay, e.getKey()+Config.CLASS_EXT), e.getValue());
+        }
+        if(Config.PROBE_MODE) {
+            writeClassFile(new File(overlay, CoverageProbe.class.getName()+Config.CLASS_EXT), probeRuntime());
         }
+        return overlay;
+    }
+
+    /**
+     * Method to remove a per-run overlay directory.
+     *
+     * @param overlay   the overlay directory, may be null
+     */
+    public void deleteOverlay(File overlay) {
+        if(overlay == null) {
+            return;
+        }
+        try {
+            Files.walk(overlay.toPath())
+                    .sorted(Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method to name the mutant of a mutation, after the class it mutates.
+     *
+     * @param ms    the mutationStmt
+     * @return      the mutant name, ms.CLASSNAME for the seed class
+     */
+    public String mutantName(MutationStmt ms) {
+        return className+Config.MUTANT_SUFFIX+ms.ID;
+    }
+
+    /**
+     * Method to generate a mutant and its instrumented version. Reads the chain state, so it must run
+     * before the chain state changes.
+     *
+     * @param ms            the mutationStmt to apply
+     * @throws IOException  throws IOException
+     */
+    public void generateMutant(MutationStmt ms) throws IOException {
+        ArrayList<MethodNode> mutatedMethods = new ArrayList<>();
+        long start = System.nanoTime();
+        Object event = FuzzEvents.begin(FuzzEvents.MUTATE);
+        byte[] mutant = mutateClass(ms, mutatedMethods);
+        writeClassFile(new File(Config.MUTANT_DIR+mutantName(ms)+Config.CLASS_EXT), mutant);
+        FuzzEvents.end(event, ms.METHOD, ms.HI, mutant.length+" bytes");
+        Metrics.time(Metrics.MUTATE, start);
+        start = System.nanoTime();
+        event = FuzzEvents.begin(FuzzEvents.INSTRUMENT);
+        ms.instrumented = instrumentMutant(ms, mutatedMethods);
+        FuzzEvents.end(event, ms.METHOD, ms.HI, ms.instrumented.length+" bytes");
+        Metrics.time(Metrics.INSTRUMENT, start);
+        if(cache != null) {
+            ms.setHash = MutantCache.setHash(methodDictionary, ms);
+            ms.bytesHash = Fnv.hash(mutant);
+        }
+    }
+
+    public double coverSeed(BitSet livecode) {
+        double x = insnList.size();
+        double y = livecode.cardinality();
         return y/x;
     }
 
@@ -948,27 +1775,137 @@ public class ClassParser {
     }
 
     public String selectMutant(MutationStmt ms) throws IOException {
-        System.out.println("==========="+totalLivecodeSet.size());
+        Object event = FuzzEvents.begin(FuzzEvents.SELECT_MUTANT);
+        System.out.println("==========="+totalLivecodeSet.cardinality());
         // get livecode set of ms
-        ArrayList<String> msLivecode = getLivecode(Config.MUTANT_DIR, ms.CLASSNAME);
-        System.out.println("==========="+msLivecode.size());
+        ExecutionResult msResult = evaluateMutant(ms);
+        System.out.println("==========="+msResult);
 //        for (String insn : msLivecode) {
 //            System.out.println(insn);
 //        }
+        long start = System.nanoTime();
+        String res = acceptMutant(ms, msResult);
+        Metrics.time(Metrics.ACCEPT, start);
+        FuzzEvents.end(event, ms.METHOD, ms.HI, res);
+        return res;
+    }
+
+    /**
+     * Method to run a generated mutant. Does not touch the chain state, so mutants can be run concurrently.
+     *
+     * @param ms            the mutation of the mutant
+     * @return              ExecutionResult holding the livecode of the mutant
+     * @throws IOException  throws IOException
+     */
+    public ExecutionResult evaluateMutant(MutationStmt ms) throws IOException {
+        byte[] instrumented = ms.instrumented;
+        ms.instrumented = null;
+        if(cache != null) {
+            long start = System.nanoTime();
+            ExecutionResult cached = cache.get(ms);
+            Metrics.time(Metrics.CACHE, start);
+            if(cached != null) {
+                return cached;
+            }
+        }
+        if(instrumented == null) {
+            InputStream run_in = new FileInputStream(Config.MUTANT_DIR+mutantName(ms)+Config.CLASS_EXT);
+            instrumented = instrumentClass(run_in);
+            run_in.close();
+        }
+        ExecutionResult result = execute(instrumented);
+        if(cache != null) {
+            cache.put(ms, result);
+        }
+        return result;
+    }
+
+    /**
+     * Method to run generated mutants together in one forked JVM. Mutants the batch did not reach are run
+     * on their own. Does not touch the chain state.
+     *
+     * @param batch         the mutations of the mutants
+     * @return              ExecutionResults in the same order
+     * @throws IOException  throws IOException
+     */
+    public ArrayList<ExecutionResult> evaluateBatch(ArrayList<MutationStmt> batch) throws IOException {
+        ArrayList<ExecutionResult> results = new ArrayList<>();
+        ArrayList<Integer> toRun = new ArrayList<>();
+        ArrayList<byte[]> instrumented = new ArrayList<>();
+        for(MutationStmt ms : batch) {
+            ExecutionResult cached = null;
+            if(cache != null) {
+                long start = System.nanoTime();
+                cached = cache.get(ms);
+                Metrics.time(Metrics.CACHE, start);
+            }
+            results.add(cached);
+            if(cached == null) {
+                byte[] bytecode = ms.instrumented;
+                ms.instrumented = null;
+                if(bytecode == null) {
+                    InputStream run_in = new FileInputStream(Config.MUTANT_DIR+mutantName(ms)+Config.CLASS_EXT);
+                    bytecode = instrumentClass(run_in);
+                    run_in.close();
+                }
+                toRun.add(results.size()-1);
+                instrumented.add(bytecode);
+            }
+        }
+        ArrayList<ExecutionResult> ran = toRun.isEmpty() ? new ArrayList<>() : executeBatch(instrumented);
+        for(int i = 0; i < toRun.size(); i++) {
+            ExecutionResult result = ran.get(i);
+            if(result == null) {
+                result = executeForked(instrumented.get(i));
+            }
+            if(cache != null) {
+                cache.put(batch.get(toRun.get(i)), result);
+            }
+            results.set(toRun.get(i), result);
+        }
+        return results;
+    }
+
+    /**
+     * Method to apply the Metropolis acceptance test to a mutant and update the chain state if it is accepted.
+     *
+     * @param ms            the mutation of the mutant
+     * @param msResult      run of the mutant
+     * @return              ACC, REJ, NONLIVE, or TIMEOUT if the livecode is truncated by the run timeout
+     */
+    public String acceptMutant(MutationStmt ms, ExecutionResult msResult) {
+        if(msResult.outcome.equals(ExecutionResult.TIMEOUT)) {
+            return Config.TIMEOUT;
+        }
+        BitSet msLivecode = msResult.livecode;
+        ms.live = msLivecode.cardinality();
+        ms.livecodeDelta = (BitSet) msLivecode.clone();
+        ms.livecodeDelta.xor(curLivecodeSet);
+        ms.newlyCovered = new BitSet();
+        for(int i = msLivecode.nextSetBit(0); i >= 0; i = msLivecode.nextSetBit(i+1)) {
+            if(!totalLivecodeSet.get(i)) {
+                ms.newlyCovered.set(i);
+            }
+        }
+        ms.newCoverage = ms.newlyCovered.cardinality();
         // calculate coverage of new mutant
         double covVal = coverSeed(msLivecode);
 
         if(covVal > 0.0) {
             // get a random value from 0.0 and 1.0
-            double randVal = new Random(System.currentTimeMillis()).nextDouble();
+            double randVal = rand.nextDouble();
             double accVal = accValue(covVal, curCoverSeedVal);
 
             if(accVal > randVal) {
-                totalLivecodeSet.addAll(msLivecode);
-                curLivecodeList = msLivecode;
+                totalLivecodeSet.or(msLivecode);
+                curLivecodeSet = msLivecode;
+                curLivecodeExited = msResult.outcome.equals(ExecutionResult.EXITED);
                 curCoverSeedVal = covVal;
                 mutationCount += 1;
                 methodDictionary.get(ms.METHOD).addMutation(ms);
+                if(!msResult.cached) {
+                    latency.add(msResult.time);
+                }
                 return Config.ACC;
             } else {
                 return Config.REJ;
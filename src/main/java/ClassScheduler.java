@@ -0,0 +1,478 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-class fuzzing of a whole jar. The classes of JAR_FILE that a plain run of SEED_CLASS_MAIN loads
+ * are parsed into one ClassParser each, which holds the Method models, the livecode and the mutations
+ * of that class. One MCMC chain, Main.runChain with this scheduler as its ClassPicker, runs over all of
+ * them: every iteration picks a class, proposes and generates a mutation of it as the single-class loop
+ * does, and runs the entry point with the mutant in place of the class and the current versions of all
+ * other classes. A mutant thus combines the
+ * accepted mutations of every class, and the acceptance test is taken on the coverage of all classes.
+ *
+ * A class is picked with weight live insns * (accepted + 1) / (proposed + 2), raised by the insns its
+ * mutants covered first, so that classes whose mutants keep being rejected give way to the others and
+ * classes that are not live are not picked at all.
+ *
+ * Only the picked class is mutated and instrumented per iteration. The agent is sent the instrumented
+ * current version of every class, which it defines lazily, a forked run only gets the mutant in front
+ * of BASE_DIR, a directory of the instrumented current versions that is updated on accept. The
+ * uninstrumented current versions are kept in CURRENT_DIR, so a mutant in MUTANT_DIR runs in front of
+ * CURRENT_DIR and the jar.
+ *
+ * Needs PROBE_MODE, and runs one chain in order: no speculative batches, checkpoints, journal, mutant
+ * cache, CDS archive or differential runs. --resume is rejected and the settings for the rest are
+ * reported as ignored at startup.
+ */
+public class ClassScheduler implements Main.ClassPicker {
+    public final static String BASE_DIR = Config.OVERLAY_DIR + "base/";
+    public final static String CURRENT_DIR = "mutant/current/";
+
+    /**
+     * A class of the jar and how its mutants fared.
+     */
+    public static class Model {
+        public ClassParser cp;
+        public byte[] current;      // instrumented current version
+        public int proposed;        // mutants run
+        public int accepted;
+        public int gain;            // insns covered first by its mutants
+
+        public Model(ClassParser cp) {
+            this.cp = cp;
+            current = cp.instrumentedSeed;
+            proposed = 0;
+            accepted = 0;
+            gain = 0;
+        }
+
+        public double weight() {
+            int live = cp.curLivecodeSet.cardinality();
+            if (live == 0) {
+                return 0.0;
+            }
+            return (live + gain) * (accepted + 1.0) / (proposed + 2.0);
+        }
+    }
+
+    public ArrayList<Model> models;
+    public SplittableRandom rand;
+    public double curCoverVal;
+    public int mutationCount;
+    int nextId;
+    Model picked;               // the class of the current iteration
+    File baseOverlay;
+
+    public ClassScheduler(SplittableRandom rand) {
+        models = new ArrayList<>();
+        this.rand = rand;
+        curCoverVal = 0.0;
+        mutationCount = 0;
+        nextId = 0;
+        picked = null;
+        baseOverlay = null;
+    }
+
+    /**
+     * Finds the classes of the jar that a run of the entry point loads, in load order, from the class
+     * loading log of a forked seed run.
+     *
+     * @return              internal names of the loaded jar classes
+     * @throws IOException  throws IOException
+     */
+    public static ArrayList<String> loadedClasses() throws IOException, InterruptedException {
+        String jarName = new File(Config.JAR_FILE).getName();
+        ProcessBuilder pb = new ProcessBuilder(ClassParser.javaBinary(), "-verbose:class", "-cp", Config.JAR_FILE, Config.SEED_CLASS_MAIN);
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        p.getOutputStream().close();
+        final ArrayList<String> loaded = new ArrayList<>();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()));
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String name = loadedClass(line, jarName);
+                    if (name != null) {
+                        synchronized (loaded) {
+                            loaded.add(name.replace('.', '/'));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // the run was killed
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        if (!p.waitFor(Config.TIMEOUT_CEILING, TimeUnit.MILLISECONDS)) {
+            p.destroyForcibly();
+        }
+        reader.join();
+        return loaded;
+    }
+
+    /**
+     * Parses a line of the class loading log, "[Loaded a.B from file:x.jar]" up to JDK 8 and
+     * "[...][class,load] a.B source: file:x.jar" since JDK 9.
+     *
+     * @param line      a line of the log
+     * @param jarName   file name of the jar
+     * @return          binary name of a class loaded from the jar, or null
+     */
+    static String loadedClass(String line, String jarName) {
+        if (!line.contains(jarName)) {
+            return null;
+        }
+        int i = line.indexOf(" source: ");
+        if (i >= 0) {
+            String head = line.substring(0, i);
+            return head.substring(head.lastIndexOf(' ') + 1);
+        }
+        i = line.indexOf(" from ");
+        if (line.startsWith("[Loaded ") && i > 0) {
+            return line.substring("[Loaded ".length(), i);
+        }
+        return null;
+    }
+
+    /**
+     * Parses the loaded classes of the jar in parallel, see JarIndex, and keeps up to MAX_CLASSES of them
+     * in load order. The models share the random source, the run latencies and the livecode servers.
+     *
+     * @param classes       internal names of the classes, in load order
+     * @throws IOException  throws IOException
+     */
+    public void parseClasses(ArrayList<String> classes) throws IOException {
+        JarIndex index = JarIndex.build(new File(Config.JAR_FILE), classes, Config.WORKERS);
+        System.out.println(index);
+        ClassParser first = null;
+        for (String name : classes) {
+            ClassParser cp = index.get(name);
+            if (models.size() >= Config.MAX_CLASSES) {
+                break;
+            }
+            if (cp == null) {
+                continue;
+            }
+            cp.rand = rand;
+            cp.cache = null;
+            if (first == null) {
+                first = cp;
+            } else {
+                cp.latency = first.latency;
+                cp.jarLatency = first.jarLatency;
+                cp.agentClient = first.agentClient;
+                cp.agentClients = first.agentClients;
+            }
+            models.add(new Model(cp));
+        }
+    }
+
+    /**
+     * Writes the instrumented current versions of all classes to the base overlay of forked runs.
+     *
+     * @throws IOException  throws IOException
+     */
+    void createBase() throws IOException {
+        baseOverlay = new File(BASE_DIR);
+        if (baseOverlay.exists()) {
+            models.get(0).cp.deleteOverlay(baseOverlay);
+        }
+        for (Model m : models) {
+            ClassParser.writeClassFile(new File(baseOverlay, m.cp.className + Config.CLASS_EXT), m.current);
+            m.cp.baseOverlay = baseOverlay;
+        }
+    }
+
+    /**
+     * Runs the entry point with the current versions of all classes, and a mutant of one of them.
+     *
+     * @param model         the mutated class, or null
+     * @param mutant        instrumented mutant of the class, or null
+     * @return              ExecutionResult with the probes of all classes
+     * @throws IOException  throws IOException
+     */
+    ExecutionResult run(Model model, byte[] mutant) throws IOException {
+        ClassParser cp = model == null ? models.get(0).cp : model.cp;
+        if (Config.USE_AGENT) {
+            LinkedHashMap<String, byte[]> classes = new LinkedHashMap<>();
+            for (Model m : models) {
+                classes.put(m.cp.className, m == model ? mutant : m.current);
+            }
+            return cp.executeAgent(classes);
+        }
+        Map<String, byte[]> classes = model == null ? Collections.emptyMap() : Collections.singletonMap(model.cp.className, mutant);
+        return cp.executeForked(classes);
+    }
+
+    /**
+     * Runs the seed and sets the livecode of every class from it.
+     *
+     * @throws IOException  throws IOException
+     */
+    public void runSeed() throws IOException {
+        if (!Config.USE_AGENT) {
+            createBase();
+        }
+        ExecutionResult seedResult = run(null, null);
+        System.out.println("Seed run: " + seedResult);
+        int live = 0;
+        int insns = 0;
+        for (Model m : models) {
+            BitSet livecode = livecode(m, seedResult);
+            m.cp.curLivecodeSet = livecode;
+            m.cp.curLivecodeExited = seedResult.outcome.equals(ExecutionResult.EXITED);
+            m.cp.totalLivecodeSet.or(livecode);
+            live += livecode.cardinality();
+            insns += m.cp.insnList.size();
+        }
+        models.get(0).cp.latency.add(seedResult.time);
+        curCoverVal = insns == 0 ? 0.0 : (double) live / insns;
+    }
+
+    BitSet livecode(Model m, ExecutionResult result) {
+        return result.probes == null ? new BitSet(m.cp.insnList.size()) : m.cp.getLivecodeFromProbes(result.probes);
+    }
+
+    /**
+     * Picks the class to mutate by weight.
+     *
+     * @return  the model of the class, or null if no class is live
+     */
+    public Model selectClass() {
+        double total = 0.0;
+        for (Model m : models) {
+            total += m.weight();
+        }
+        if (total <= 0.0) {
+            return null;
+        }
+        double r = rand.nextDouble() * total;
+        Model last = null;
+        for (Model m : models) {
+            double w = m.weight();
+            if (w <= 0.0) {
+                continue;
+            }
+            last = m;
+            r -= w;
+            if (r < 0.0) {
+                return m;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Applies the Metropolis acceptance test to a mutant on the coverage of all classes, and updates the
+     * state of all classes if it is accepted.
+     *
+     * @param model         the mutated class
+     * @param ms            the mutation of the mutant
+     * @param instrumented  the instrumented mutant
+     * @param result        run of the mutant
+     * @return              ACC, REJ, NONLIVE if the mutated class did not run, or TIMEOUT
+     * @throws IOException  throws IOException
+     */
+    public String acceptMutant(Model model, MutationStmt ms, byte[] instrumented, ExecutionResult result) throws IOException {
+        model.proposed++;
+        if (result.outcome.equals(ExecutionResult.TIMEOUT)) {
+            return Config.TIMEOUT;
+        }
+        BitSet[] livecode = new BitSet[models.size()];
+        int live = 0;
+        int insns = 0;
+        ms.newCoverage = 0;
+        for (int k = 0; k < models.size(); k++) {
+            Model m = models.get(k);
+            livecode[k] = livecode(m, result);
+            for (int i = livecode[k].nextSetBit(0); i >= 0; i = livecode[k].nextSetBit(i + 1)) {
+                if (!m.cp.totalLivecodeSet.get(i)) {
+                    ms.newCoverage++;
+                }
+            }
+            live += livecode[k].cardinality();
+            insns += m.cp.insnList.size();
+        }
+        ms.live = live;
+        model.gain += ms.newCoverage;
+        if (livecode[models.indexOf(model)].isEmpty()) {
+            return Config.NONLIVE;
+        }
+        double covVal = (double) live / insns;
+        double accVal = model.cp.accValue(covVal, curCoverVal);
+        if (accVal <= rand.nextDouble()) {
+            return Config.REJ;
+        }
+
+        for (int k = 0; k < models.size(); k++) {
+            Model m = models.get(k);
+            m.cp.totalLivecodeSet.or(livecode[k]);
+            m.cp.curLivecodeSet = livecode[k];
+            m.cp.curLivecodeExited = result.outcome.equals(ExecutionResult.EXITED);
+        }
+        curCoverVal = covVal;
+        mutationCount++;
+        model.accepted++;
+        model.cp.mutationCount++;
+        model.cp.methodDictionary.get(ms.METHOD).addMutation(ms);
+        model.current = instrumented;
+        if (baseOverlay != null) {
+            ClassParser.writeClassFile(new File(baseOverlay, model.cp.className + Config.CLASS_EXT), instrumented);
+        }
+        File current = new File(CURRENT_DIR + model.cp.className + Config.CLASS_EXT);
+        current.getParentFile().mkdirs();
+        Files.copy(new File(Config.MUTANT_DIR + model.cp.mutantName(ms) + Config.CLASS_EXT).toPath(), current.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (!result.cached) {
+            model.cp.latency.add(result.time);
+        }
+        return Config.ACC;
+    }
+
+    /**
+     * Picks the class of the next iteration by weight. Mutation ids are unique over all classes, so the
+     * picked class goes on from the ids the previous one used.
+     *
+     * @return  the class parser of the class, or null if no class is live
+     */
+    @Override
+    public ClassParser pick() {
+        if (picked != null) {
+            nextId = picked.cp.chainMutationCount;
+        }
+        picked = selectClass();
+        if (picked == null) {
+            return null;
+        }
+        picked.cp.chainMutationCount = nextId;
+        return picked.cp;
+    }
+
+    /**
+     * Runs the mutant of the picked class with the current versions of all others and tests it.
+     *
+     * @param cp            the class parser of the picked class
+     * @param ms            the mutation of the mutant
+     * @return              ACC, REJ, NONLIVE or TIMEOUT
+     * @throws IOException  throws IOException
+     */
+    @Override
+    public String select(ClassParser cp, MutationStmt ms) throws IOException {
+        byte[] instrumented = ms.instrumented;
+        ms.instrumented = null;
+        Object event = FuzzEvents.begin(FuzzEvents.SELECT_MUTANT);
+        ExecutionResult result = run(picked, instrumented);
+        long start = System.nanoTime();
+        String res = acceptMutant(picked, ms, instrumented, result);
+        Metrics.time(Metrics.ACCEPT, start);
+        FuzzEvents.end(event, ms.METHOD, ms.HI, res);
+        return res;
+    }
+
+    /**
+     * @return  a line per class with its livecode, insns and mutant counts
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Model m : models) {
+            sb.append(String.format("%s: %d/%d live, %d total, %d proposed, %d accepted, %d gained\n", m.cp.className,
+                    m.cp.curLivecodeSet.cardinality(), m.cp.insnList.size(), m.cp.totalLivecodeSet.cardinality(), m.proposed, m.accepted, m.gain));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reports the settings a multi-class campaign does not follow.
+     *
+     * @param resume    whether --resume was given
+     * @return          false if the campaign cannot run with them
+     */
+    static boolean checkConfig(boolean resume) {
+        if (!Config.PROBE_MODE || (!Config.USE_AGENT && !Config.USE_OVERLAY)) {
+            System.out.println("Multi-class fuzzing needs PROBE_MODE, and USE_AGENT or USE_OVERLAY");
+            return false;
+        }
+        if (resume) {
+            System.out.println("Multi-class fuzzing keeps no checkpoints, --resume is not supported");
+            return false;
+        }
+        if (Config.CHAINS > 1) {
+            System.out.println(String.format("Multi-class fuzzing runs one chain, CHAINS = %d is ignored", Config.CHAINS));
+        }
+        if (Config.BATCH_SIZE > 1) {
+            System.out.println(String.format("Multi-class fuzzing runs one mutant at a time, BATCH_SIZE = %d is ignored", Config.BATCH_SIZE));
+        }
+        if (Config.CACHE_SIZE > 0) {
+            System.out.println("Multi-class fuzzing does not cache mutant runs, a run depends on the current versions of all classes");
+        }
+        if (Config.CHECKPOINT_INTERVAL > 0) {
+            System.out.println("Multi-class fuzzing writes no checkpoints or mutation journal, CHECKPOINT_INTERVAL is ignored");
+        }
+        if (Config.DIFF_MODE) {
+            System.out.println("Multi-class fuzzing runs no differential runs, DIFF_MODE is ignored");
+        }
+        if (Config.USE_CDS && !Config.USE_AGENT) {
+            System.out.println("Multi-class fuzzing records no CDS archive, USE_CDS is ignored");
+        }
+        return true;
+    }
+
+    /**
+     * Runs a multi-class campaign over JAR_FILE from SEED_CLASS_MAIN.
+     *
+     * @param seed      the campaign seed
+     * @param resume    whether --resume was given
+     * @throws IOException  throws IOException
+     */
+    public static void run(long seed, boolean resume) throws IOException, InterruptedException {
+        if (!checkConfig(resume)) {
+            return;
+        }
+        ClassScheduler scheduler = new ClassScheduler(new SplittableRandom(seed).split());
+        ArrayList<String> loaded = loadedClasses();
+        scheduler.parseClasses(loaded);
+        System.out.println(String.format("%d classes of %s loaded, %d fuzzed", loaded.size(), Config.JAR_FILE, scheduler.models.size()));
+        if (scheduler.models.isEmpty()) {
+            return;
+        }
+        scheduler.runSeed();
+        System.out.println(String.format("Seed coverage: %.4f", scheduler.curCoverVal));
+
+        Metrics.gauge("coverage", () -> {
+            long coverage = 0;
+            for (Model m : scheduler.models) {
+                coverage += m.cp.totalLivecodeSet.cardinality();
+            }
+            return coverage;
+        });
+        Metrics.gauge("seed_insns", () -> {
+            long insns = 0;
+            for (Model m : scheduler.models) {
+                insns += m.cp.insnList.size();
+            }
+            return insns;
+        });
+        Metrics.gauge("mutations", () -> scheduler.mutationCount);
+        Metrics.gauge("classes", () -> scheduler.models.size());
+        Metrics.gauge("pruned", MutantPruner::total);
+        Metrics.start(false);
+        FuzzEvents.start();
+
+        ClassParser chain = scheduler.models.get(0).cp;
+        Main.runChain(chain, scheduler, null, null);
+
+        System.out.println(String.format("[%s %d] === Fuzzing operation finished ===", Main.DTF.format(LocalDateTime.now()), System.currentTimeMillis()));
+        FuzzEvents.stop();
+        Metrics.stop();
+        scheduler.models.get(0).cp.close();
+        System.out.print(scheduler.report());
+        System.out.println(MutantPruner.report());
+        System.out.println(String.format("Campaign seed: %d", seed));
+        System.out.println(String.format("Results: %d ACC, %d REJ, %d NONLIVE, %d TIMEOUT", Main.ACC.size(), Main.REJ.size(), Main.NONLIVE.size(), Main.TIMEOUT.size()));
+    }
+}
@@ -3,10 +3,13 @@ public class Config {
     public final static String SEED_CLASS_MAIN = "org.apache.xalan.xslt.Process";
     public final static String SEED_CLASS = "org/apache/xalan/xslt/Process";
     public final static String JAR_FILE = "xalan.jar";
-    public final static String MUTANT_CLASS = SEED_CLASS+"_MUTANT_";
+    public final static String MUTANT_SUFFIX = "_MUTANT_";
+    public final static String MUTANT_CLASS = SEED_CLASS+MUTANT_SUFFIX;
     public final static String SEED_DIR = "seed/";
     public final static String RUN_DIR = "run/";
     public final static String MUTANT_DIR = "mutant/mutant/";
+    public final static String OVERLAY_DIR = "overlay/";     // point at a tmpfs such as /dev/shm/ to keep runs off disk
+    public final static String HIERARCHY_FILE = "hierarchy.idx";    // class hierarchy of the jar and the JDK, rebuilt when either changes
 
     public final static int MAX_ITERATIONS = 2500;
     public final static int LOOP_COUNT = 5;
@@ -14,12 +17,65 @@ public class Config {
     public final static double PROB_HIGH = 0.8;
     public final static double BETA = 0.08;
     public final static double EPSILON = 0.05;
+    public final static int CHAINS = 1;         // independent MCMC chains sharing one total livecode set
+    public final static int BATCH_SIZE = 1;     // speculative mutants per step, 1 runs the plain sequential loop
+    public final static int WORKERS = Runtime.getRuntime().availableProcessors();
+    public final static int CACHE_SIZE = 10000;     // mutant runs kept in the mutant cache, 0 disables it
+    public final static long CAMPAIGN_SEED = -1;      // seed of all random choices, -1 draws one; --seed overrides it
+    public final static int CHECKPOINT_INTERVAL = 100;  // iterations between checkpoints of a chain, 0 disables them
+    public final static String CHECKPOINT_EXT = ".ckpt";
+    public final static long METRICS_INTERVAL = 10000;  // ms between metrics exports, 0 disables them
+    public final static int METRICS_PORT = 3867;        // localhost port of the plain-text metrics endpoint, 0 disables it
+    public final static String METRICS_EXT = ".metrics";
+    public final static boolean JFR_RECORDING = true;   // keep a continuous flight recording of the campaign (JDK 11+)
+    public final static long JFR_MAX_AGE = 300000;      // ms of events kept in the recording
+    public final static long JFR_MAX_SIZE = 64 << 20;   // bytes kept in the recording
+    public final static long JFR_SLOW_ITERATION = 30000;    // ms after which an iteration dumps the recording, 0 never
+    public final static String JFR_EXT = ".jfr";
+    public final static boolean SEED_CACHE = true;      // reuse the seed model and seed run of earlier campaigns on the same seed and jar
+    public final static String SEED_CACHE_DIR = "seedcache/";
+    public final static String SEED_CACHE_EXT = ".seed";
+    public final static String JOURNAL_EXT = ".journal";
+    public final static int JOURNAL_SYNC = 64;          // journal records between syncs, checkpoints sync it too
+
+    public final static boolean MULTI_CLASS = false;    // fuzz every class of JAR_FILE that SEED_CLASS_MAIN loads, see ClassScheduler
+    public final static int MAX_CLASSES = 200;          // classes fuzzed in multi-class mode, in load order
 
     public final static String INSN_ID = "[INSNID]";
+    public final static boolean PROBE_MODE = true;
+    public final static String PROBE_FIELD = "__classming_probes";
+    public final static String PROBE_PROPERTY = "classming.probes";
+    public final static String PROBE_FILE = "probes.bin";
+    public final static String PROBE_HEARTBEAT = "[PROBES] ";  // prefix of the covered slot counts probe runs report
 
     public final static String ACC = "ACC";
     public final static String REJ = "REJ";
     public final static String NONLIVE = "NONLIVE";
+    public final static String TIMEOUT = "TIMEOUT";
 
     public final static int SERVER_PORT = 3866;
+    public final static boolean USE_AGENT = true;
+    public final static int AGENT_MAX_RUNS = 200;
+    public final static long AGENT_TIMEOUT_MARGIN = 5000;  // ms past the run timeout before a server that did not answer is recycled
+    public final static boolean USE_OVERLAY = true;
+    public final static boolean FORK_BATCH = true;      // forked runs of a speculative batch share one LivecodeAgent JVM
+
+    public final static boolean USE_CDS = true;         // share the target's class data between forked runs (JDK 13+)
+    public final static String CDS_ARCHIVE = "classming.jsa";
+    public final static String CDS_BASE_JAR = "classming-base.jar";
+    public final static int CDS_SAMPLES = 3;            // seed runs timed with and without the archive
+    public final static String[] LAUNCH_PROFILE = {"-XX:+UseSerialGC", "-XX:TieredStopAtLevel=1", "-Xss1m", "-XX:-UsePerfData"};
+    public final static long TIMEOUT_FLOOR = 1000;      // run timeouts are p99 of recent run times * TIMEOUT_FACTOR,
+    public final static long TIMEOUT_CEILING = 20000;   // clamped to [TIMEOUT_FLOOR, TIMEOUT_CEILING] ms
+    public final static double TIMEOUT_FACTOR = 4.0;
+    public final static int LATENCY_WINDOW = 1000;      // run times kept for the p99
+    public final static long POLL_INTERVAL = 10;        // ms between budget checks of a forked run
+    public final static long TRACE_BUDGET = 1000000;    // livecode lines read before a forked run is killed, not counted in PROBE_MODE
+    public final static long STALL_BUDGET = 500;        // ms without new livecode before a forked run is killed, probe heartbeats in PROBE_MODE
+
+    public final static boolean DIFF_MODE = false;      // run accepted mutants under all DIFF configurations
+    public final static String[] DIFF_OPTIONS = {"-Xint", "-XX:TieredStopAtLevel=1", "-XX:-TieredCompilation"};
+    public final static String[] DIFF_JDKS = {};        // java homes of further JDKs, run with default options
+    public final static long DIFF_TIMEOUT = 10000;
+    public final static String DIFF_EXT = ".diff";
 }
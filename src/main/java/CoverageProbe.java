@@ -0,0 +1,155 @@
+import java.io.*;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runtime side of probe instrumentation. Shipped onto the classpath of the target.
+ *
+ * Every instrumented class registers a byte[] with one slot per seed instruction from its static
+ * initializer, and each probe sets its slot to 1. At shutdown the arrays are dumped as a bitmap per
+ * class to the file named by the PROBE_PROPERTY system property. While such a run lives, the covered
+ * slot count of a class is also written to stderr as a PROBE_HEARTBEAT line whenever it grows, which
+ * feeds the early-kill budgets of the forked run.
+ *
+ * Dump format: int MAGIC, int class count, then per class: UTF class name, int slot count, and
+ * (slot count + 7) / 8 bytes holding slot i in bit (i % 8) of byte (i / 8).
+ */
+public class CoverageProbe implements Runnable {
+    public final static int MAGIC = 0xC1A55C0F;
+
+    static LinkedHashMap<String, byte[]> probes = new LinkedHashMap<>();
+    static boolean hooked = false;
+
+    final boolean heartbeat;    // the heartbeat thread rather than the shutdown hook
+
+    CoverageProbe(boolean heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    public static synchronized byte[] register(String className, int size) {
+        byte[] slots = new byte[size];
+        probes.put(className, slots);
+
+        if (!hooked && System.getProperty(Config.PROBE_PROPERTY) != null) {
+            hooked = true;
+            // this class is the only one shipped to the target, so it is its own hook and heartbeat
+            Runtime.getRuntime().addShutdownHook(new Thread(new CoverageProbe(false)));
+            Thread t = new Thread(new CoverageProbe(true));
+            t.setDaemon(true);
+            t.start();
+        }
+        return slots;
+    }
+
+    @Override
+    public void run() {
+        if (heartbeat) {
+            heartbeat();
+            return;
+        }
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(System.getProperty(Config.PROBE_PROPERTY)));
+            dump(out);
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reports the covered slot count of every class that covered more since the last report, every
+     * POLL_INTERVAL ms. Written to the stderr descriptor, so the target redirecting System.err does not
+     * hide it.
+     */
+    static void heartbeat() {
+        PrintStream err = new PrintStream(new FileOutputStream(FileDescriptor.err), true);
+        HashMap<String, Integer> reported = new HashMap<>();
+        StringBuilder sb = new StringBuilder();
+        try {
+            while (true) {
+                Thread.sleep(Config.POLL_INTERVAL);
+                synchronized (CoverageProbe.class) {
+                    for (Map.Entry<String, byte[]> e : probes.entrySet()) {
+                        int count = 0;
+                        for (byte slot : e.getValue()) {
+                            count += slot;
+                        }
+                        Integer last = reported.get(e.getKey());
+                        if (last == null || count > last) {
+                            reported.put(e.getKey(), count);
+                            sb.append(Config.PROBE_HEARTBEAT).append(e.getKey()).append(' ').append(count).append('\n');
+                        }
+                    }
+                }
+                if (sb.length() > 0) {
+                    err.print(sb);
+                    err.flush();
+                    sb.setLength(0);
+                }
+            }
+        } catch (InterruptedException e) {
+            // the target is exiting
+        }
+    }
+
+    public static synchronized void reset() {
+        probes.clear();
+    }
+
+    public static synchronized void dump(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(probes.size());
+        for (Map.Entry<String, byte[]> e : probes.entrySet()) {
+            byte[] slots = e.getValue();
+            byte[] bits = new byte[(slots.length + 7) / 8];
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != 0) {
+                    bits[i >> 3] |= 1 << (i & 7);
+                }
+            }
+            out.writeUTF(e.getKey());
+            out.writeInt(slots.length);
+            out.write(bits);
+        }
+        out.flush();
+    }
+
+    public static synchronized byte[] snapshot() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            dump(bos);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Reads a dump back into one BitSet per class.
+     *
+     * @param is            the dump
+     * @return              class name -> covered slots, the classes before the cut if the dump is truncated, empty if it is missing
+     */
+    public static LinkedHashMap<String, BitSet> read(InputStream is) {
+        LinkedHashMap<String, BitSet> coverage = new LinkedHashMap<>();
+        try {
+            DataInputStream in = new DataInputStream(is);
+            if (in.readInt() != MAGIC) {
+                return coverage;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                byte[] bits = new byte[(in.readInt() + 7) / 8];
+                in.readFully(bits);
+                coverage.put(className, BitSet.valueOf(bits));
+            }
+        } catch (IOException e) {
+            // the target died while dumping, keep what was read
+        }
+        return coverage;
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Runs a mutant under several JVM configurations at once and compares what they do. Outputs are
+ * not kept; each stream is folded into a 64-bit FNV-1a hash while it is read. Only mutants on which
+ * the configurations disagree are appended to the SEED_CLASS+DIFF_EXT file.
+ */
+public class DifferentialExecutor {
+    final static String UNCAUGHT = "Exception in thread ";
+
+    final ArrayList<String[]> configs;      // java binary followed by its options
+    final ExecutorService pool;
+    final ClassParser cp;
+    public int runs;
+    public int discrepancies;
+
+    /**
+     * Behaviour of one run.
+     */
+    public static class Fingerprint {
+        public final String config;
+        public long stdoutHash;
+        public long stderrHash;
+        public int exitCode;
+        public String exceptionType;
+        public boolean timedOut;
+
+        public Fingerprint(String config) {
+            this.config = config;
+            stdoutHash = Fnv.OFFSET;
+            stderrHash = Fnv.OFFSET;
+            exitCode = 0;
+            exceptionType = "";
+            timedOut = false;
+        }
+
+        public boolean sameAs(Fingerprint f) {
+            return stdoutHash == f.stdoutHash && stderrHash == f.stderrHash && exitCode == f.exitCode
+                    && exceptionType.equals(f.exceptionType) && timedOut == f.timedOut;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s out=%016x err=%016x exit=%s exception=%s", config, stdoutHash, stderrHash,
+                    timedOut ? "TIMEOUT" : String.valueOf(exitCode), exceptionType.isEmpty() ? "-" : exceptionType);
+        }
+    }
+
+    /**
+     * @param cp    the class parser, used to build the classpath overlay of a mutant
+     */
+    public DifferentialExecutor(ClassParser cp) {
+        this.cp = cp;
+        configs = new ArrayList<>();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (String options : Config.DIFF_OPTIONS) {
+            configs.add(config(java, options));
+        }
+        for (String home : Config.DIFF_JDKS) {
+            configs.add(config(home + File.separator + "bin" + File.separator + "java", ""));
+        }
+        // each run needs its own thread plus two stream readers
+        pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        runs = 0;
+        discrepancies = 0;
+    }
+
+    static String[] config(String java, String options) {
+        ArrayList<String> config = new ArrayList<>();
+        config.add(java);
+        for (String option : options.split(" ")) {
+            if (!option.isEmpty()) {
+                config.add(option);
+            }
+        }
+        return config.toArray(new String[0]);
+    }
+
+    /**
+     * Runs a mutant under all configurations and records it if they disagree.
+     *
+     * @param ms            the mutation of the mutant
+     * @return              true if the configurations disagree
+     * @throws IOException  throws IOException
+     */
+    public boolean check(MutationStmt ms) throws IOException {
+        byte[] mutant = Files.readAllBytes(new File(Config.MUTANT_DIR+ms.CLASSNAME+Config.CLASS_EXT).toPath());
+        File overlay = cp.createOverlay(mutant);
+        String classPath = overlay.getPath() + File.pathSeparator + Config.JAR_FILE;
+        ArrayList<Fingerprint> fingerprints = new ArrayList<>();
+        try {
+            ArrayList<Future<Fingerprint>> futures = new ArrayList<>();
+            for (final String[] config : configs) {
+                futures.add(pool.submit(() -> run(config, classPath)));
+            }
+            for (Future<Fingerprint> f : futures) {
+                fingerprints.add(f.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            cp.deleteOverlay(overlay);
+        }
+
+        synchronized (this) {
+            runs++;
+            for (Fingerprint f : fingerprints) {
+                if (!f.sameAs(fingerprints.get(0))) {
+                    discrepancies++;
+                    record(ms, fingerprints);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the seed main class once.
+     *
+     * @param config        java binary and options
+     * @param classPath     classpath holding the mutant
+     * @return              the fingerprint of the run
+     * @throws Exception    throws IOException, or an exception of a stream reader
+     */
+    public Fingerprint run(String[] config, String classPath) throws Exception {
+        ArrayList<String> cmd = new ArrayList<>(Arrays.asList(config));
+        cmd.add("-cp");
+        cmd.add(classPath);
+        cmd.add(Config.SEED_CLASS_MAIN);
+        Fingerprint fp = new Fingerprint(String.join(" ", config));
+
+        Process p = new ProcessBuilder(cmd).start();
+        p.getOutputStream().close();
+        Future<Long> out = pool.submit(() -> hash(p.getInputStream(), null));
+        Future<Long> err = pool.submit(() -> hash(p.getErrorStream(), fp));
+        if (!p.waitFor(Config.DIFF_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            fp.timedOut = true;
+            p.destroyForcibly();
+            p.waitFor();
+        } else {
+            fp.exitCode = p.exitValue();
+        }
+        fp.stdoutHash = out.get();
+        fp.stderrHash = err.get();
+        return fp;
+    }
+
+    /**
+     * Hashes a stream to its end.
+     *
+     * @param in    the stream
+     * @param fp    receives the type of the first uncaught exception found in the stream, may be null
+     * @return      FNV-1a hash of the stream
+     */
+    static long hash(InputStream in, Fingerprint fp) {
+        long h = Fnv.OFFSET;
+        StringBuilder line = new StringBuilder();
+        byte[] buf = new byte[8192];
+        int n;
+        try {
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    h = (h ^ (buf[i] & 0xFF)) * Fnv.PRIME;
+                    if (fp == null) {
+                        continue;
+                    }
+                    if (buf[i] == '\n') {
+                        exceptionType(line, fp);
+                        line.setLength(0);
+                    } else if (line.length() < 512) {
+                        line.append((char) buf[i]);
+                    }
+                }
+            }
+            if (fp != null) {
+                exceptionType(line, fp);
+            }
+            in.close();
+        } catch (IOException e) {
+            // the process was killed
+        }
+        return h;
+    }
+
+    static void exceptionType(StringBuilder line, Fingerprint fp) {
+        // Exception in thread "main" java.lang.IllegalStateException: message
+        if (!fp.exceptionType.isEmpty() || line.indexOf(UNCAUGHT) != 0) {
+            return;
+        }
+        int start = line.indexOf("\" ", UNCAUGHT.length());
+        if (start < 0) {
+            return;
+        }
+        String rest = line.substring(start + 2).trim();
+        int end = rest.indexOf(':');
+        fp.exceptionType = end < 0 ? rest : rest.substring(0, end);
+    }
+
+    void record(MutationStmt ms, ArrayList<Fingerprint> fingerprints) throws IOException {
+        FileWriter writer = new FileWriter(Config.SEED_CLASS+Config.DIFF_EXT, true);
+        writer.write(String.format("[%s] %s %s\n", Main.DTF.format(LocalDateTime.now()), ms.CLASSNAME, ms));
+        for (Fingerprint f : fingerprints) {
+            writer.write(String.format("    %s\n", f));
+        }
+        writer.close();
+    }
+
+    public void close() {
+        pool.shutdownNow();
+    }
+}
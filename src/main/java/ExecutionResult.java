@@ -0,0 +1,36 @@
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Outcome of one run of an instrumented class: its livecode and why the run ended.
+ */
+public class ExecutionResult {
+    public final static String EXITED = "EXITED";               // the target finished on its own
+    public final static String TRACE_BUDGET = "TRACE_BUDGET";   // killed after TRACE_BUDGET livecode lines
+    public final static String STALLED = "STALLED";             // killed after STALL_BUDGET ms without new livecode
+    public final static String COVERED = "COVERED";             // killed once every seed insn was live
+    public final static String TIMEOUT = "TIMEOUT";             // killed when the run timeout expired
+
+    public BitSet livecode;
+    public String outcome;
+    public long traceLength;    // livecode lines read
+    public long time;           // wall time of the run in ms
+    public long timeout;        // timeout the run was given in ms
+    public boolean cached;      // taken from the mutant cache, the mutant was not run
+    public Map<String, BitSet> probes;  // probe slots of every instrumented class that ran, in PROBE_MODE
+
+    public ExecutionResult(BitSet livecode, String outcome) {
+        this.livecode = livecode;
+        this.outcome = outcome;
+        traceLength = 0;
+        time = 0;
+        timeout = 0;
+        cached = false;
+        probes = null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s after %dms of %dms, %d live insns, %d trace lines%s", outcome, time, timeout, livecode.cardinality(), traceLength, cached ? " (cached)" : "");
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * 64-bit FNV-1a hashing, used wherever contents are identified by a hash: mutant caching, the seed
+ * cache and hierarchy index keys, and the outputs of differential runs.
+ */
+public class Fnv {
+    public final static long OFFSET = 0xcbf29ce484222325L;
+    public final static long PRIME = 0x100000001b3L;
+
+    /**
+     * @param bytes     the bytes
+     * @return          FNV-1a hash of the bytes
+     */
+    public static long hash(byte[] bytes) {
+        return add(OFFSET, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Folds bytes into a hash.
+     *
+     * @param h         the hash so far, OFFSET to start one
+     * @param bytes     the bytes
+     * @param off       index of the first byte
+     * @param len       number of bytes
+     * @return          the hash including the bytes
+     */
+    public static long add(long h, byte[] bytes, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Folds the chars of a string into a hash.
+     *
+     * @param h     the hash so far, OFFSET to start one
+     * @param s     the string
+     * @return      the hash including the string
+     */
+    public static long add(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * PRIME;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JFR events around the stages of an iteration, so that a stalled campaign can be read from a flight
+ * recording next to the GC and process events of the JVM. Every event carries the chain, the iteration,
+ * the method, the mutator and the outcome of its stage. The chain and iteration come from a context
+ * that the thread running a stage enters first; the stages of a mutant take the rest from its
+ * MutationStmt.
+ *
+ * With JFR_RECORDING a continuous recording named RECORDING is started, bounded to JFR_MAX_AGE and
+ * JFR_MAX_SIZE. It is dumped when an iteration takes longer than JFR_SLOW_ITERATION, at most once per
+ * JFR_MAX_AGE, and on demand from http://localhost:METRICS_PORT/jfr or with jcmd <pid> JFR.dump
+ * name=classming. Without a recording the events cost a check each.
+ *
+ * Everything that touches jdk.jfr is in JfrEvents, which is only loaded once AVAILABLE is true, and
+ * callers only hold events as Objects, so the fuzzer still runs on a JVM without jdk.jfr.
+ */
+public class FuzzEvents {
+    public final static String RECORDING = "classming";
+
+    public final static String SELECT_METHOD = "SelectMethod";
+    public final static String SELECT_HP = "SelectHP";
+    public final static String SELECT_TP = "SelectTP";
+    public final static String MUTATE = "Mutate";
+    public final static String INSTRUMENT = "Instrument";
+    public final static String LAUNCH = "Launch";
+    public final static String TRACE = "Trace";
+    public final static String SELECT_MUTANT = "SelectMutant";
+
+    final static boolean AVAILABLE = available();
+
+    static final ThreadLocal<int[]> context = ThreadLocal.withInitial(() -> new int[]{-1, -1});
+    static final ThreadLocal<MutationStmt> mutation = new ThreadLocal<>();
+    static final AtomicLong lastDump = new AtomicLong();
+    static volatile boolean recording = false;
+
+    static boolean available() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return JfrEvents.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Enters an iteration of a chain on the current thread, before its mutation is proposed.
+     *
+     * @param chain     the chain id
+     * @param iteration the iteration
+     */
+    public static void enter(int chain, int iteration) {
+        int[] c = context.get();
+        c[0] = chain;
+        c[1] = iteration;
+        mutation.remove();
+    }
+
+    /**
+     * Enters the iteration of a proposed mutation on the current thread, before its mutant is generated
+     * or run.
+     *
+     * @param chain     the chain id
+     * @param ms        the mutation
+     */
+    public static void enter(int chain, MutationStmt ms) {
+        enter(chain, ms.iteration);
+        mutation.set(ms);
+    }
+
+    /**
+     * Begins the event of a stage.
+     *
+     * @param stage     the stage
+     * @return          the event, or null if JFR is not available
+     */
+    public static Object begin(String stage) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        return JfrEvents.begin(stage);
+    }
+
+    /**
+     * Ends the event of a stage of the mutation the thread entered, if any.
+     *
+     * @param event     the event from begin
+     * @param outcome   the outcome of the stage
+     */
+    public static void end(Object event, String outcome) {
+        MutationStmt ms = mutation.get();
+        if (ms == null) {
+            end(event, null, Integer.MIN_VALUE, outcome);
+        } else {
+            end(event, ms.METHOD, ms.HI, outcome);
+        }
+    }
+
+    /**
+     * Ends the event of a stage.
+     *
+     * @param event     the event from begin
+     * @param method    the method of the stage, or null
+     * @param hi        the mutator of the stage, or Integer.MIN_VALUE if there is none yet
+     * @param outcome   the outcome of the stage
+     */
+    public static void end(Object event, String method, int hi, String outcome) {
+        if (event == null) {
+            return;
+        }
+        int[] c = context.get();
+        JfrEvents.end(event, c[0], c[1], method, hi, outcome);
+    }
+
+    /**
+     * Ends the event of a run, with the length of its trace.
+     *
+     * @param event     the event from begin(TRACE)
+     * @param result    the result of the run
+     */
+    public static void endTrace(Object event, ExecutionResult result) {
+        if (event != null) {
+            JfrEvents.setTraceLength(event, result.traceLength);
+            end(event, result.outcome);
+        }
+    }
+
+    /**
+     * Starts the continuous recording if JFR_RECORDING is set, and the dump endpoint if the metrics are
+     * served.
+     */
+    public static void start() {
+        if (!Config.JFR_RECORDING || !AVAILABLE) {
+            return;
+        }
+        JfrEvents.start(RECORDING);
+        recording = true;
+        System.out.println(String.format("Flight recording %s started", RECORDING));
+
+        if (Metrics.server != null) {
+            Metrics.server.createContext("/jfr", exchange -> {
+                File file = dump("");
+                byte[] body = (file == null ? "no recording\n" : file.getAbsolutePath() + "\n").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(file == null ? 503 : 200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            });
+        }
+    }
+
+    /**
+     * Dumps the recording if an iteration was slower than JFR_SLOW_ITERATION.
+     *
+     * @param chain     the chain id
+     * @param iteration the iteration
+     * @param millis    how long the iteration took
+     */
+    public static void iterationEnded(int chain, int iteration, long millis) {
+        if (!recording || Config.JFR_SLOW_ITERATION <= 0 || millis <= Config.JFR_SLOW_ITERATION) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastDump.get();
+        // the recording covers JFR_MAX_AGE, a dump within that window would hold the same stall
+        if (now - last < Config.JFR_MAX_AGE || !lastDump.compareAndSet(last, now)) {
+            return;
+        }
+        File file = dump(String.format(".slow.%d.%d", chain, iteration));
+        if (file != null) {
+            System.out.println(String.format("Iteration #%d of chain %d took %dms, flight recording dumped to %s", iteration, chain, millis, file));
+        }
+    }
+
+    /**
+     * Writes the recording so far to a file.
+     *
+     * @param suffix    added to the file name
+     * @return          the file, or null if there is no recording or it could not be written
+     */
+    public static synchronized File dump(String suffix) {
+        if (!recording) {
+            return null;
+        }
+        File file = new File(Config.SEED_CLASS + suffix + "." + System.currentTimeMillis() + Config.JFR_EXT);
+        try {
+            JfrEvents.dump(file.toPath());
+            return file;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Stops the recording, the data not dumped is dropped.
+     */
+    public static void stop() {
+        if (recording) {
+            recording = false;
+            JfrEvents.stop();
+        }
+    }
+}
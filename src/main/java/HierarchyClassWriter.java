@@ -0,0 +1,30 @@
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A ClassWriter that computes frames from the HierarchyIndex instead of loading classes. Only types
+ * missing from the index fall back to ASM's class loading; a type neither knows fails the writer with
+ * TypeNotPresentException, as a plain ClassWriter does.
+ */
+public class HierarchyClassWriter extends ClassWriter {
+    final HierarchyIndex index;
+
+    public HierarchyClassWriter(int flags) {
+        super(flags);
+        index = HierarchyIndex.get();
+    }
+
+    public HierarchyClassWriter(ClassReader classReader, int flags) {
+        super(classReader, flags);
+        index = HierarchyIndex.get();
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        String common = index.getCommonSuperClass(type1, type2);
+        if (common != null) {
+            return common;
+        }
+        return super.getCommonSuperClass(type1, type2);
+    }
+}
@@ -0,0 +1,323 @@
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Super class and interfaces of every class in the target jar, the seed directory and the JDK, read
+ * from class file headers without loading anything. Built once and saved to HIERARCHY_FILE; the saved
+ * index is reused as long as the jar, the seed directory and the JDK are unchanged. Never modified after it is built, so
+ * it is queried without locking.
+ *
+ * File format: int MAGIC, UTF key, int class count, then per class: UTF name, UTF super name ("" for
+ * none), boolean interface flag, int interface count and UTF interface names.
+ */
+public class HierarchyIndex {
+    public final static int MAGIC = 0xC1A55EED;
+    public final static String OBJECT = "java/lang/Object";
+
+    static volatile HierarchyIndex instance;
+
+    /**
+     * Header of one class.
+     */
+    public static class Entry {
+        public final String superName;
+        public final String[] interfaces;
+        public final boolean isInterface;
+
+        public Entry(String superName, String[] interfaces, boolean isInterface) {
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+    }
+
+    final HashMap<String, Entry> classes;
+
+    HierarchyIndex(HashMap<String, Entry> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Returns the index, loading or building it on first use.
+     *
+     * @return  the index
+     */
+    public static HierarchyIndex get() {
+        HierarchyIndex index = instance;
+        if (index == null) {
+            synchronized (HierarchyIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = load(new File(Config.HIERARCHY_FILE), key());
+                    if (index == null) {
+                        index = build();
+                        try {
+                            index.save(new File(Config.HIERARCHY_FILE), key());
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Identifies the inputs of the index, a saved index with another key is rebuilt.
+     *
+     * @return  the key
+     */
+    static String key() {
+        File jar = new File(Config.JAR_FILE);
+        return jar.getAbsolutePath() + ":" + jar.length() + ":" + jar.lastModified() + ":"
+                + String.format("%016x", seedDirHash()) + ":"
+                + System.getProperty("java.home") + ":" + System.getProperty("java.version");
+    }
+
+    /**
+     * Hashes path, length and modification time of every class file in the seed directory.
+     *
+     * @return  the hash, 0 if there is no seed directory
+     */
+    static long seedDirHash() {
+        File seedDir = new File(Config.SEED_DIR);
+        if (!seedDir.isDirectory()) {
+            return 0;
+        }
+        StringBuilder sb = new StringBuilder();
+        try (Stream<Path> paths = Files.walk(seedDir.toPath())) {
+            paths.filter(p -> p.toString().endsWith(Config.CLASS_EXT)).sorted().forEach(p -> {
+                File f = p.toFile();
+                sb.append(p).append(':').append(f.length()).append(':').append(f.lastModified()).append('\n');
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return Fnv.hash(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Entry lookup(String name) {
+        return classes.get(name);
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * Checks whether a value of type2 can be assigned to type1.
+     *
+     * @param type1     internal name of the target type
+     * @param type2     internal name of the source type
+     * @return          true if type1 is type2 or one of its supertypes, false also if type2 is unknown
+     */
+    public boolean isAssignableFrom(String type1, String type2) {
+        if (type1.equals(type2) || type1.equals(OBJECT)) {
+            return true;
+        }
+        Entry e = classes.get(type2);
+        if (e == null) {
+            return false;
+        }
+        if (e.superName != null && isAssignableFrom(type1, e.superName)) {
+            return true;
+        }
+        for (String itf : e.interfaces) {
+            if (isAssignableFrom(type1, itf)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same contract as ClassWriter.getCommonSuperClass.
+     *
+     * @param type1     internal name of a class
+     * @param type2     internal name of another class
+     * @return          internal name of the common super class, or null if a class is unknown
+     */
+    public String getCommonSuperClass(String type1, String type2) {
+        Entry e1 = classes.get(type1);
+        Entry e2 = classes.get(type2);
+        if (e1 == null || e2 == null) {
+            return null;
+        }
+        if (isAssignableFrom(type1, type2)) {
+            return type1;
+        }
+        if (isAssignableFrom(type2, type1)) {
+            return type2;
+        }
+        if (e1.isInterface || e2.isInterface) {
+            return OBJECT;
+        }
+        String type = type1;
+        while (!isAssignableFrom(type, type2)) {
+            Entry e = classes.get(type);
+            if (e == null || e.superName == null) {
+                return OBJECT;
+            }
+            type = e.superName;
+        }
+        return type;
+    }
+
+    /**
+     * Scans the JDK, the target jar and the seed directory.
+     *
+     * @return  the new index
+     */
+    public static HierarchyIndex build() {
+        HashMap<String, Entry> classes = new HashMap<>();
+        File rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        try {
+            if (rtJar.exists()) {
+                scanJar(rtJar, classes);
+            } else {
+                // the module image of a JDK 9+
+                Path modules = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules");
+                scanTree(modules, classes);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        try {
+            scanJar(new File(Config.JAR_FILE), classes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            File seedDir = new File(Config.SEED_DIR);
+            if (seedDir.isDirectory()) {
+                scanTree(seedDir.toPath(), classes);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new HierarchyIndex(classes);
+    }
+
+    static void scanJar(File file, HashMap<String, Entry> classes) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(Config.CLASS_EXT)) {
+                InputStream in = zip.getInputStream(entry);
+                add(ClassParser.readBytes(in), classes);
+                in.close();
+            }
+        }
+        zip.close();
+    }
+
+    static void scanTree(Path root, HashMap<String, Entry> classes) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(p -> p.toString().endsWith(Config.CLASS_EXT)).forEach(p -> {
+                try {
+                    add(Files.readAllBytes(p), classes);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    static void add(byte[] bytecode, HashMap<String, Entry> classes) {
+        if (bytecode.length > 8 && ((bytecode[6] & 0xFF) << 8 | (bytecode[7] & 0xFF)) > (Opcodes.V16 & 0xFFFF)) {
+            // only the header is read, so a class file newer than ASM can read is read as the newest it can
+            bytecode = bytecode.clone();
+            bytecode[6] = 0;
+            bytecode[7] = (byte) Opcodes.V16;
+        }
+        try {
+            ClassReader cr = new ClassReader(bytecode);
+            boolean isInterface = (cr.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+            // the first definition wins, as on the classpath
+            classes.putIfAbsent(cr.getClassName(), new Entry(cr.getSuperName(), cr.getInterfaces(), isInterface));
+        } catch (IllegalArgumentException e) {
+            // not a class file
+        }
+    }
+
+    /**
+     * Saves the index. It is written to a temporary file of its own and moved into place, so campaigns
+     * saving at the same time do not mix their writes.
+     *
+     * @param file          the index file
+     * @param key           the key of the index
+     * @throws IOException  throws IOException
+     */
+    public void save(File file, String key) throws IOException {
+        // next to the index, so that the move stays on one file system
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = File.createTempFile("hierarchy", ".tmp", dir);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeUTF(key);
+            out.writeInt(classes.size());
+            for (java.util.Map.Entry<String, Entry> e : classes.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeUTF(entry.superName == null ? "" : entry.superName);
+                out.writeBoolean(entry.isInterface);
+                out.writeInt(entry.interfaces.length);
+                for (String itf : entry.interfaces) {
+                    out.writeUTF(itf);
+                }
+            }
+            out.close();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Loads a saved index.
+     *
+     * @param file      the saved index
+     * @param key       the expected key
+     * @return          the index, or null if it is missing, stale or unreadable
+     */
+    public static HierarchyIndex load(File file, String key) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(key)) {
+                return null;
+            }
+            int count = in.readInt();
+            HashMap<String, Entry> classes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String superName = in.readUTF();
+                boolean isInterface = in.readBoolean();
+                String[] interfaces = new String[in.readInt()];
+                for (int j = 0; j < interfaces.length; j++) {
+                    interfaces[j] = in.readUTF();
+                }
+                classes.put(name, new Entry(superName.isEmpty() ? null : superName, interfaces, isInterface));
+            }
+            return new HierarchyIndex(classes);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of durations in microseconds, in log-linear buckets as in an HDR histogram: values below
+ * 2^SUB_BITS get a bucket each, above that every power of two is split into 2^SUB_BITS buckets, so a
+ * recorded value is off by at most 1/2^SUB_BITS. Recording is lock free, so all chains and workers
+ * share one histogram per phase.
+ */
+public class Histogram {
+    final static int SUB_BITS = 5;
+    final static int SUB_COUNT = 1 << SUB_BITS;
+
+    final AtomicLongArray buckets;
+    final AtomicLong count;
+    final AtomicLong sum;
+    final AtomicLong max;
+
+    public Histogram() {
+        buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_COUNT);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @param bucket    index of a bucket
+     * @return          the largest value that falls into the bucket
+     */
+    static long highest(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = bucket - shift * SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Records one duration.
+     *
+     * @param micros    the duration in microseconds, negative values count as 0
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long sum() {
+        return sum.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param q     the quantile, in [0, 1]
+     * @return      an upper bound of the quantile in microseconds, 0 if nothing was recorded
+     */
+    public long percentile(double q) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+}
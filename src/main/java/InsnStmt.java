@@ -1,12 +1,14 @@
 import org.objectweb.asm.Label;
 
 public class InsnStmt {
+    public int id;
     public int labelIdx;
     public String insnName;
     public String insnContent;
     public String methodName;
     public int insnIdx;
     public boolean isDefUse;
+    String identifier;
 
     public InsnStmt(String name, String content, String method, int idx, boolean idu) {
         insnName = name;
@@ -15,6 +17,7 @@ public class InsnStmt {
         insnIdx = idx;
         isDefUse = idu;
         labelIdx = 0;
+        id = -1;
     }
 
     public InsnStmt(String name, String content, String method, int idx, boolean idu, int lidx) {
@@ -24,12 +27,15 @@ public class InsnStmt {
         insnIdx = idx;
         isDefUse = idu;
         labelIdx = lidx;
+        id = -1;
     }
 
     public String identifier() {
-        String insnType = insnContent.split(" ")[0];
-        String id = Config.INSN_ID+methodName+"-"+insnIdx+"-"+insnName;
-        return id.replace(" ", "_");
+        if(identifier == null) {
+            String id = Config.INSN_ID+methodName+"-"+insnIdx+"-"+insnName;
+            identifier = id.replace(" ", "_");
+        }
+        return identifier;
     }
 
     @Override
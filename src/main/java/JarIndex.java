@@ -0,0 +1,150 @@
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * Parsed seed models of the classes of a jar, built in parallel. The entries are read through the zip
+ * file system of the jar and parsed on a fork/join pool, one ClassParser per class, which are merged
+ * into a concurrent index by internal name. Parsing only touches the parser of the class, so the
+ * classes need no coordination; the hierarchy index the instrumentation needs is built before the
+ * pool starts.
+ *
+ * The seed part of a model, its Method models, insn list and table, label heads and def-use flags, is
+ * not changed after parsing, the chain state is set up on top of it by whoever fuzzes the class.
+ * Interfaces, annotations, modules, classes without insns and classes that cannot be parsed or
+ * instrumented are left out.
+ */
+public class JarIndex {
+    public final static int THRESHOLD = 8;     // entries parsed by one task without splitting
+
+    final ConcurrentHashMap<String, ClassParser> classes;
+    public final int entries;       // class entries read
+    public final long time;         // ms the entries took to read and parse
+
+    JarIndex(ConcurrentHashMap<String, ClassParser> classes, int entries, long time) {
+        this.classes = classes;
+        this.entries = entries;
+        this.time = time;
+    }
+
+    public ClassParser get(String name) {
+        return classes.get(name);
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * Parses one class into its model.
+     *
+     * @param bytecode  the class bytes
+     * @return          the model, or null if the class is not fuzzed
+     */
+    public static ClassParser parse(byte[] bytecode) {
+        try {
+            if ((new ClassReader(bytecode).getAccess() & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ANNOTATION | Opcodes.ACC_MODULE)) != 0) {
+                return null;
+            }
+            ClassParser cp = new ClassParser();
+            cp.parseClass(new ByteArrayInputStream(bytecode));
+            return cp.insnList.isEmpty() ? null : cp;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses entries of the jar, splitting the range until it is at most THRESHOLD entries long.
+     */
+    static class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final List<Path> paths;
+        final int from;
+        final int to;
+        final ConcurrentHashMap<String, ClassParser> classes;
+
+        ParseTask(List<Path> paths, int from, int to, ConcurrentHashMap<String, ClassParser> classes) {
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+            this.classes = classes;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseTask(paths, from, mid, classes), new ParseTask(paths, mid, to, classes));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    ClassParser cp = parse(Files.readAllBytes(paths.get(i)));
+                    if (cp != null) {
+                        classes.putIfAbsent(cp.className, cp);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index of a jar.
+     *
+     * @param jar           the jar
+     * @param names         internal names of the classes to parse, or null for all classes of the jar
+     * @param parallelism   worker threads of the pool
+     * @return              the index
+     * @throws IOException  throws IOException
+     */
+    public static JarIndex build(File jar, Collection<String> names, int parallelism) throws IOException {
+        // frames of instrumented classes are computed from it, it must not be built by every worker
+        HierarchyIndex.get();
+        long start = System.currentTimeMillis();
+        URI uri = URI.create("jar:" + jar.getAbsoluteFile().toURI());
+        ConcurrentHashMap<String, ClassParser> classes = new ConcurrentHashMap<>();
+        int entries;
+        try (FileSystem zipfs = FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap())) {
+            ArrayList<Path> paths = new ArrayList<>();
+            if (names == null) {
+                try (Stream<Path> walk = Files.walk(zipfs.getPath("/"))) {
+                    walk.filter(p -> p.toString().endsWith(Config.CLASS_EXT)).forEach(paths::add);
+                }
+            } else {
+                for (String name : names) {
+                    Path p = zipfs.getPath("/" + name + Config.CLASS_EXT);
+                    if (Files.exists(p)) {
+                        paths.add(p);
+                    }
+                }
+            }
+            entries = paths.size();
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+            try {
+                pool.invoke(new ParseTask(paths, 0, paths.size(), classes));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return new JarIndex(classes, entries, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d classes indexed in %dms", classes.size(), entries, time);
+    }
+}
@@ -0,0 +1,147 @@
+import jdk.jfr.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * The jdk.jfr side of FuzzEvents: the event types and the continuous recording. Only FuzzEvents uses
+ * this class, and only after it found jdk.jfr available, so that loading FuzzEvents never loads jdk.jfr.
+ */
+class JfrEvents {
+    static Recording recording;
+
+    @Category("Classming")
+    @StackTrace(false)
+    static abstract class StageEvent extends Event {
+        @Label("Chain")
+        int chain;
+        @Label("Iteration")
+        int iteration;
+        @Label("Method")
+        String method;
+        @Label("Mutator")
+        String mutator;
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("classming.SelectMethod")
+    @Label("Select Method")
+    static class SelectMethodEvent extends StageEvent {
+    }
+
+    @Name("classming.SelectHP")
+    @Label("Select Hooking Point")
+    static class SelectHPEvent extends StageEvent {
+    }
+
+    @Name("classming.SelectTP")
+    @Label("Select Target Points")
+    static class SelectTPEvent extends StageEvent {
+    }
+
+    @Name("classming.Mutate")
+    @Label("Mutate Class")
+    static class MutateEvent extends StageEvent {
+    }
+
+    @Name("classming.Instrument")
+    @Label("Instrument Mutant")
+    static class InstrumentEvent extends StageEvent {
+    }
+
+    @Name("classming.Launch")
+    @Label("Launch Target")
+    @Description("Starting the JVM of a forked run or of a batch harness")
+    static class LaunchEvent extends StageEvent {
+    }
+
+    @Name("classming.Trace")
+    @Label("Consume Trace")
+    @Description("Waiting for a run to end while its livecode is read")
+    static class TraceEvent extends StageEvent {
+        @Label("Trace Length")
+        long traceLength;
+    }
+
+    @Name("classming.SelectMutant")
+    @Label("Select Mutant")
+    static class SelectMutantEvent extends StageEvent {
+    }
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static Object begin(String stage) {
+        StageEvent e;
+        switch (stage) {
+            case FuzzEvents.SELECT_METHOD:
+                e = new SelectMethodEvent();
+                break;
+            case FuzzEvents.SELECT_HP:
+                e = new SelectHPEvent();
+                break;
+            case FuzzEvents.SELECT_TP:
+                e = new SelectTPEvent();
+                break;
+            case FuzzEvents.MUTATE:
+                e = new MutateEvent();
+                break;
+            case FuzzEvents.INSTRUMENT:
+                e = new InstrumentEvent();
+                break;
+            case FuzzEvents.LAUNCH:
+                e = new LaunchEvent();
+                break;
+            case FuzzEvents.TRACE:
+                e = new TraceEvent();
+                break;
+            default:
+                e = new SelectMutantEvent();
+        }
+        e.begin();
+        return e;
+    }
+
+    static void end(Object event, int chain, int iteration, String method, int hi, String outcome) {
+        StageEvent e = (StageEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.chain = chain;
+            e.iteration = iteration;
+            e.method = method;
+            e.mutator = hi == Integer.MIN_VALUE ? null : Main.getOpcodesStr(hi);
+            e.outcome = outcome;
+            e.commit();
+        }
+    }
+
+    static void setTraceLength(Object event, long traceLength) {
+        ((TraceEvent) event).traceLength = traceLength;
+    }
+
+    static void start(String name) {
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (IOException | java.text.ParseException e) {
+            e.printStackTrace();
+            recording = new Recording();
+        }
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMillis(Config.JFR_MAX_AGE));
+        recording.setMaxSize(Config.JFR_MAX_SIZE);
+        recording.start();
+    }
+
+    static void dump(Path path) throws IOException {
+        recording.dump(path);
+    }
+
+    static void stop() {
+        recording.close();
+        recording = null;
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.Arrays;
+
+/**
+ * Run times of the most recent normal runs, used to derive the timeout of the next run:
+ * p99 of the window times TIMEOUT_FACTOR, clamped to [TIMEOUT_FLOOR, TIMEOUT_CEILING]. Until the first
+ * sample arrives the ceiling is used. Shared by all chains.
+ */
+public class LatencyTracker {
+    final long[] window;
+    int count;
+    int next;
+    volatile long timeout;
+
+    public LatencyTracker() {
+        window = new long[Config.LATENCY_WINDOW];
+        count = 0;
+        next = 0;
+        timeout = Config.TIMEOUT_CEILING;
+    }
+
+    /**
+     * Adds the run time of a run that ended normally.
+     *
+     * @param time      run time in ms
+     */
+    public synchronized void add(long time) {
+        window[next] = time;
+        next = (next + 1) % window.length;
+        count = Math.min(count + 1, window.length);
+
+        long[] sorted = Arrays.copyOf(window, count);
+        Arrays.sort(sorted);
+        long p99 = sorted[(int) Math.ceil(0.99 * count) - 1];
+        timeout = Math.max(Config.TIMEOUT_FLOOR, Math.min(Config.TIMEOUT_CEILING, (long) (p99 * Config.TIMEOUT_FACTOR)));
+    }
+
+    /**
+     * @return  timeout of the next run in ms
+     */
+    public long timeout() {
+        return timeout;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+}
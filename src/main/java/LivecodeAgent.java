@@ -1,59 +1,328 @@
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.lang.instrument.*;
+import java.lang.reflect.InvocationTargetException;
 import java.net.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * A resident execution server for instrumented classes.
+ *
+ * The fuzzer ships instrumented class bytes over a socket: the entry class, and in multi-class mode the
+ * current versions of all classes it fuzzes. Every run loads them in a fresh isolated class loader on top
+ * of the target jar, invokes main of the entry class with System.exit trapped and System.out captured,
+ * and sends the livecode back, printed lines as well as probe arrays, which the target shares with the
+ * server through its CoverageProbe. The server exits after AGENT_MAX_RUNS runs or when a run does not
+ * finish in time, so that leaked state from the target is thrown away with the JVM.
+ *
+ * With --batch the same runs are made for a bundle of classes read from a file instead of a socket, so
+ * that forked runs of a batch pay for one JVM start. Bundle format: int BATCH_MAGIC, int class count,
+ * then per class: UTF binary name, int length, the class bytes and long timeout. The result file holds
+ * per class run a long run time in ms followed by the response of a socket run, and ends early when a
+ * run made the server recycle itself.
+ */
 public class LivecodeAgent {
+    public final static String MSG_RUN = "run";
+    public final static String MSG_QUIT = "quit";
+    public final static String STATUS_OK = "OK";
+    public final static String STATUS_TIMEOUT = "TIMEOUT";
+    public final static String STATUS_ERROR = "ERROR";
+    public final static String READY = "LISTENING";
+    public final static String BATCH = "--batch";
+    public final static int BATCH_MAGIC = 0xC1A55BA7;
+
     public static Instrumentation insn;
+    public static PrintStream realOut;
+    public static int runCount = 0;
 
-    public static void loadClass(String[] classData) throws IOException, ClassNotFoundException, UnmodifiableClassException {
-        URLClassLoader loader = new URLClassLoader(new URL[] {
-                new URL("file://" + classData[1])
-        });
-        ClassDefinition classDef = new ClassDefinition(loader.loadClass(classData[2]), Files.readAllBytes(Paths.get(classData[3])));
-        insn.redefineClasses(classDef);
+    /**
+     * Thrown in place of terminating the JVM when the target calls System.exit.
+     */
+    public static class ExitTrappedException extends SecurityException {
+        private static final long serialVersionUID = 1L;
+
+        public final int status;
+
+        public ExitTrappedException(int status) {
+            super("System.exit(" + status + ") trapped");
+            this.status = status;
+        }
+    }
+
+    /**
+     * Permits everything except System.exit. On JDK 18+ the JVM must be started with
+     * -Djava.security.manager=allow, as AgentClient and the forked batch runs do.
+     */
+    @SuppressWarnings("removal")
+    public static class ExitTrap extends SecurityManager {
+        @Override
+        public void checkExit(int status) {
+            throw new ExitTrappedException(status);
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+    }
+
+    /**
+     * Loads the shipped classes before looking at the target jar. Everything else is delegated to the
+     * platform loader only, so that fuzzer classes never leak into the target.
+     */
+    public static class IsolatedClassLoader extends URLClassLoader {
+        Map<String, byte[]> classes;    // binary name -> class bytes
+
+        public IsolatedClassLoader(URL[] urls, Map<String, byte[]> classes) {
+            super(urls, ClassLoader.getSystemClassLoader().getParent());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(className)) {
+                Class<?> c = findLoadedClass(className);
+                byte[] bytecode = c == null ? classes.get(className) : null;
+                if (bytecode != null) {
+                    c = defineClass(className, bytecode, 0, bytecode.length);
+                }
+                if (c == null && className.equals(CoverageProbe.class.getName())) {
+                    return CoverageProbe.class;
+                }
+                if (c == null) {
+                    return super.loadClass(className, resolve);
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Collects lines containing INSN_ID from the target's stdout without buffering the rest.
+     */
+    public static class LivecodeOutputStream extends OutputStream {
+        final ArrayList<String> lines = new ArrayList<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                String s = line.toString();
+                if (s.contains(Config.INSN_ID)) {
+                    lines.add(s.trim());
+                }
+                line.reset();
+            } else {
+                line.write(b);
+            }
+        }
+
+        public synchronized ArrayList<String> getLines() {
+            return new ArrayList<>(lines);
+        }
     }
 
-    public static void listener() {
+    /**
+     * Runs main of the shipped class once.
+     *
+     * @param name      binary name of the class
+     * @param bytecode  instrumented class bytes
+     * @param timeout   ms the run may take
+     * @param out       response stream
+     * @return          true if the server has to be recycled
+     */
+    public static boolean run(String name, byte[] bytecode, long timeout, DataOutputStream out) throws IOException {
+        return run(name, Collections.singletonMap(name, bytecode), timeout, out);
+    }
+
+    /**
+     * Runs main of the entry class once, with the shipped classes in place of their copies in the jar.
+     *
+     * @param name      binary name of the entry class
+     * @param classes   binary name -> instrumented class bytes
+     * @param timeout   ms the run may take
+     * @param out       response stream
+     * @return          true if the server has to be recycled
+     */
+    public static boolean run(String name, Map<String, byte[]> classes, long timeout, DataOutputStream out) throws IOException {
+        runCount++;
+        final LivecodeOutputStream livecode = new LivecodeOutputStream();
+        final Throwable[] error = new Throwable[1];
+        final IsolatedClassLoader loader = new IsolatedClassLoader(new URL[] {
+                new File(Config.JAR_FILE).toURI().toURL()
+        }, classes);
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Class<?> c = loader.loadClass(name);
+                    c.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+                } catch (InvocationTargetException e) {
+                    if (!(e.getCause() instanceof ExitTrappedException)) {
+                        error[0] = e.getCause();
+                    }
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        });
+        t.setContextClassLoader(loader);
+        t.setDaemon(true);
+
+        CoverageProbe.reset();
+        System.setOut(new PrintStream(livecode, true));
         try {
-            ServerSocket serverSocket = new ServerSocket(Config.SERVER_PORT);
-            while(true) {
-                Socket clientSocket = serverSocket.accept();
+            t.start();
+            t.join(timeout);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            System.out.flush();
+            System.setOut(realOut);
+        }
 
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+        String status = STATUS_OK;
+        boolean recycle = runCount >= Config.AGENT_MAX_RUNS;
+        if (t.isAlive()) {
+            // the target is stuck, its thread can't be stopped safely
+            status = STATUS_TIMEOUT;
+            recycle = true;
+        } else if (error[0] instanceof LinkageError || error[0] instanceof VirtualMachineError) {
+            status = STATUS_ERROR;
+            recycle = recycle || error[0] instanceof VirtualMachineError;
+        }
+        try {
+            loader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-                String inputLine;
-                boolean receiving = true;
-                while ((inputLine = in.readLine()) != null && receiving) {
-                    String msg[] = inputLine.split(" ");
-                    String msgType = msg[0];
+        ArrayList<String> lines = livecode.getLines();
+        out.writeUTF(status);
+        out.writeInt(lines.size());
+        for (String line : lines) {
+            out.writeUTF(line);
+        }
+        byte[] probes = CoverageProbe.snapshot();
+        out.writeInt(probes.length);
+        out.write(probes);
+        out.writeBoolean(recycle);
+        out.flush();
+        return recycle;
+    }
+
+    public static void listener(int port) {
+        try {
+            ServerSocket serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+            realOut.println(READY + " " + serverSocket.getLocalPort());
+            realOut.flush();
+            boolean recycle = false;
+            while (!recycle) {
+                Socket clientSocket = serverSocket.accept();
+                DataInputStream in = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
 
-                    if (msgType == "loadClass") {
-                        loadClass(msg);
-                    } else {
-                        break;
+                try {
+                    while (!recycle) {
+                        String msgType = in.readUTF();
+                        if (msgType.equals(MSG_RUN)) {
+                            String name = in.readUTF();
+                            int count = in.readInt();
+                            HashMap<String, byte[]> classes = new HashMap<>();
+                            for (int i = 0; i < count; i++) {
+                                String className = in.readUTF();
+                                byte[] bytecode = new byte[in.readInt()];
+                                in.readFully(bytecode);
+                                classes.put(className, bytecode);
+                            }
+                            recycle = run(name, classes, in.readLong(), out);
+                        } else {
+                            recycle = msgType.equals(MSG_QUIT);
+                            break;
+                        }
                     }
+                } catch (EOFException e) {
+                    // client went away, wait for the next one
                 }
                 clientSocket.close();
             }
+            serverSocket.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Runs the classes of a bundle one after another, each in its own isolated class loader.
+     *
+     * @param bundle    the bundle file
+     * @param results   the result file
+     */
+    public static void batch(File bundle, File results) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bundle)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(results)))) {
+            if (in.readInt() != BATCH_MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            boolean recycle = false;
+            for (int i = 0; i < count && !recycle; i++) {
+                String name = in.readUTF();
+                byte[] bytecode = new byte[in.readInt()];
+                in.readFully(bytecode);
+                long timeout = in.readLong();
+                // the run limit of the server does not apply, only a stuck or broken run stops the bundle
+                runCount = 0;
+                long startTime = System.currentTimeMillis();
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                recycle = run(name, bytecode, timeout, new DataOutputStream(response));
+                out.writeLong(System.currentTimeMillis() - startTime);
+                response.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @SuppressWarnings("removal")
+    public static void start(int port) {
+        realOut = System.out;
+        System.setSecurityManager(new ExitTrap());
+        listener(port);
+        Runtime.getRuntime().halt(0);
+    }
+
     public static void premain(String agentArgs, Instrumentation inst) {
         insn = inst;
 
         Thread t1 = new Thread(new Runnable() {
             @Override
             public void run() {
-                listener();
+                start(Config.SERVER_PORT);
             }
         });
         t1.start();
+    }
 
+    @SuppressWarnings("removal")
+    public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals(BATCH)) {
+            realOut = System.out;
+            System.setSecurityManager(new ExitTrap());
+            batch(new File(args[1]), new File(args[2]));
+            Runtime.getRuntime().halt(0);
+        }
+        start(args.length > 0 ? Integer.parseInt(args[0]) : Config.SERVER_PORT);
     }
 }
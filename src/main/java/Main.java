@@ -1,7 +1,15 @@
 import java.io.*;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.objectweb.asm.Opcodes;
 
@@ -12,9 +20,15 @@ import org.objectweb.asm.Opcodes;
  * @version 0.1.1
  */
 public class Main {
-    public static HashSet<String> ACC = new HashSet<>();
-    public static HashSet<String> REJ = new HashSet<>();
-    public static HashSet<String> NONLIVE = new HashSet<>();
+    public static Set<String> ACC = Collections.synchronizedSet(new HashSet<>());
+    public static Set<String> REJ = Collections.synchronizedSet(new HashSet<>());
+    public static Set<String> NONLIVE = Collections.synchronizedSet(new HashSet<>());
+    public static Set<String> TIMEOUT = Collections.synchronizedSet(new HashSet<>());
+    public static AtomicInteger STALE = new AtomicInteger();    // speculative mutants discarded after an earlier one in the batch was accepted
+    public static AtomicInteger WASTED = new AtomicInteger();   // stale mutants that had already started running
+    public static DifferentialExecutor DIFF = null;
+
+    final public static DateTimeFormatter DTF = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
 
     // final public static int[] MUTATORS = {Opcodes.GOTO, Opcodes.RETURN, Opcodes.ATHROW, Opcodes.LOOKUPSWITCH, Opcodes.TABLESWITCH, -1};
     final public static int[] MUTATORS = {Opcodes.RETURN, Opcodes.RETURN, Opcodes.GOTO, Opcodes.GOTO, -1};
@@ -39,30 +53,27 @@ public class Main {
     /**
      * This method selects a random mutator from the MUTATORS list.
      *
+     * @param rand    random source of the chain
      * @return  an int corresponding to the Opcode of the mutator or -1 for remove a previous mutation
      */
-    public static int getMutator() {
-        return MUTATORS[new Random().nextInt(MUTATORS.length)];
+    public static int getMutator(SplittableRandom rand) {
+        return MUTATORS[rand.nextInt(MUTATORS.length)];
     }
 
     /**
      * This method selects a method to mutate.
      *
      * @param methodList        list of methods in class
-     * @param curLivecodeList   current livecode list
+     * @param curLivecodeSet    current livecode set
+     * @param rand              random source of the chain
      * @return                  a Method reference to selected method
      */
-    public static Method selectMethod(ArrayList<Method> methodList, ArrayList<String> curLivecodeList) {
+    public static Method selectMethod(ArrayList<Method> methodList, BitSet curLivecodeSet, SplittableRandom rand) {
         // get list of live methods
         ArrayList<Method> liveMethodList = new ArrayList<>();
-        HashSet<String> liveMethodNames = new HashSet<>();
-
-        for(String insn : curLivecodeList) {
-            liveMethodNames.add(insn.split("-")[0]);
-        }
 
         for(Method method : methodList) {
-            if(liveMethodNames.contains(Config.INSN_ID+method.methodName)) {
+            if(method.insnSet.intersects(curLivecodeSet)) {
                 liveMethodList.add(method);
             }
         }
@@ -74,7 +85,7 @@ public class Main {
         // sort methods by potential value in descending order
         liveMethodList.sort(Collections.reverseOrder());
         // get a random value from 0.0 and 1.0
-        double randVal = new Random(System.currentTimeMillis()).nextDouble();
+        double randVal = rand.nextDouble();
         // get method based on the random value
         int k = (int)Math.floor(liveMethodList.size() * Math.log(1.0-randVal) / Math.log(Config.EPSILON)) % liveMethodList.size();
 
@@ -85,53 +96,50 @@ public class Main {
      * This method selects a hooking point.
      *
      * @param method            method to be mutated
-     * @param curLivecodeList   current livecode list
-     * @return                  a String representing the hooking point insn
+     * @param curLivecodeSet    current livecode set
+     * @param rand              random source of the chain
+     * @return                  the label index of the hooking point
      */
-    public static int selectHP(Method method, ArrayList<String> curLivecodeList) {
+    public static int selectHP(Method method, BitSet curLivecodeSet, SplittableRandom rand) {
         ArrayList<InsnStmt> methodLivecodeList = new ArrayList<>();
-        Hashtable<String, InsnStmt> methodInsnTable = new Hashtable<>();
         for(InsnStmt is : method.insnList) {
-            methodInsnTable.put(is.identifier(), is);
-        }
-        for(String insn : curLivecodeList) {
-            if(methodInsnTable.containsKey(insn)) {
-                methodLivecodeList.add(methodInsnTable.get(insn));
+            if(curLivecodeSet.get(is.id)) {
+                methodLivecodeList.add(is);
             }
         }
 
-        int idx1 = new Random(System.currentTimeMillis()).nextInt(methodLivecodeList.size());
-        int idx2 = new Random(System.currentTimeMillis()).nextInt(methodLivecodeList.size());
+        int idx1 = rand.nextInt(methodLivecodeList.size());
+        int idx2 = rand.nextInt(methodLivecodeList.size());
 
-        HashSet<String> valSet1 = new HashSet<>();
+        BitSet valSet1 = new BitSet();
         for(int j=0;j<idx1;j++) {
             if(methodLivecodeList.get(j).isDefUse) {
-                valSet1.add(methodLivecodeList.get(j).identifier());
+                valSet1.set(methodLivecodeList.get(j).id);
             }
         }
-        HashSet<String> valSet12 = new HashSet<>();
+        BitSet valSet12 = new BitSet();
         for(int j=idx1;j<methodLivecodeList.size();j++) {
             if(methodLivecodeList.get(j).isDefUse) {
-                valSet1.add(methodLivecodeList.get(j).identifier());
+                valSet1.set(methodLivecodeList.get(j).id);
             }
         }
-        valSet1.retainAll(valSet12);
+        valSet1.and(valSet12);
 
-        HashSet<String> valSet2 = new HashSet<>();
+        BitSet valSet2 = new BitSet();
         for(int j=0;j<idx2;j++) {
             if(methodLivecodeList.get(j).isDefUse) {
-                valSet1.add(methodLivecodeList.get(j).identifier());
+                valSet1.set(methodLivecodeList.get(j).id);
             }
         }
-        HashSet<String> valSet22 = new HashSet<>();
+        BitSet valSet22 = new BitSet();
         for(int j=idx2;j<methodLivecodeList.size();j++) {
             if(methodLivecodeList.get(j).isDefUse) {
-                valSet1.add(methodLivecodeList.get(j).identifier());
+                valSet1.set(methodLivecodeList.get(j).id);
             }
         }
-        valSet2.retainAll(valSet22);
+        valSet2.and(valSet22);
 
-        if(valSet1.size() >= valSet2.size()) {
+        if(valSet1.cardinality() >= valSet2.cardinality()) {
             return methodLivecodeList.get(idx1).labelIdx;
         } else {
             return methodLivecodeList.get(idx2).labelIdx;
@@ -142,18 +150,18 @@ public class Main {
      * This method selects a target point.
      *
      * @param method            the method to choose instruction
-     * @param totalLivecodeSet  set of all livecodes
+     * @param totalLivecodeSet  set of all livecodes of all chains
      * @param curLivecodeSet    set of most recent livecodes
-     * @return                  a String representing the target point insn
+     * @param rand              random source of the chain
+     * @return                  the id of the target point insn
      */
-    public static String getTP(Method method, HashSet<String> totalLivecodeSet, HashSet<String> curLivecodeSet) {
+    public static int getTP(Method method, SharedCoverage totalLivecodeSet, BitSet curLivecodeSet, SplittableRandom rand) {
         while(true) {
             // get a random insn
-            Random rand = new Random(System.currentTimeMillis());
-            String tp = method.insnList.get((int) (method.insnList.size() * rand.nextDouble()) % method.insnList.size()).identifier();
+            int tp = method.insnList.get((int) (method.insnList.size() * rand.nextDouble()) % method.insnList.size()).id;
 
             // if the insn was never reached before, use it as the target point
-            if(!totalLivecodeSet.contains(tp)) {
+            if(!totalLivecodeSet.get(tp)) {
                 return tp;
             }
 
@@ -161,12 +169,12 @@ public class Main {
             double randVal = rand.nextDouble();
 
             // if the insn was not reached in the current mutation, and random value is smaller than PROB_HIGH, use it as the target point
-            if(!curLivecodeSet.contains(tp) && randVal < Config.PROB_HIGH) {
+            if(!curLivecodeSet.get(tp) && randVal < Config.PROB_HIGH) {
                 return tp;
             }
 
             // if the insn was reached in the current mutation, and random value is smaller than PROB_LOW, use it as the target point
-            if(curLivecodeSet.contains(tp) && randVal < Config.PROB_LOW) {
+            if(curLivecodeSet.get(tp) && randVal < Config.PROB_LOW) {
                 return tp;
             }
         }
@@ -177,15 +185,16 @@ public class Main {
      *
      * @param method            method to select tp from
      * @param size              number of tps to select
-     * @param totalLivecodeSet  set of all livecodes
+     * @param totalLivecodeSet  set of all livecodes of all chains
      * @param curLivecodeSet    set of most recent livecodes
-     * @return                  an ArrayList<String> containing selected target points
+     * @param rand              random source of the chain
+     * @return                  an ArrayList<Integer> containing ids of selected target points
      */
-    public static ArrayList<String> selectTP(Method method, int size, HashSet<String> totalLivecodeSet, HashSet<String> curLivecodeSet) {
-        ArrayList<String> tpList = new ArrayList<>();
+    public static ArrayList<Integer> selectTP(Method method, int size, SharedCoverage totalLivecodeSet, BitSet curLivecodeSet, SplittableRandom rand) {
+        ArrayList<Integer> tpList = new ArrayList<>();
 
         for(int i=0; i<size; i++) {
-            tpList.add(getTP(method, totalLivecodeSet, curLivecodeSet));
+            tpList.add(getTP(method, totalLivecodeSet, curLivecodeSet, rand));
         }
 
         return tpList;
@@ -195,13 +204,13 @@ public class Main {
      * This method selects a random mutation from the method given.
      *
      * @param method    method to remove mutation from
+     * @param rand      random source of the chain
      */
-    public static MutationStmt getRandomMutation(Method method) {
+    public static MutationStmt getRandomMutation(Method method, SplittableRandom rand) {
         if(method.mutationCount == 1) {
             return null;
         }
         Integer[] hps = method.mutationDictionary.keySet().toArray(new Integer[0]);
-        Random rand = new Random(System.currentTimeMillis());
         int randInt1 = rand.nextInt(hps.length);
         if(method.mutationDictionary.get(hps[randInt1]).size() == 1) {
             return method.mutationDictionary.get(hps[randInt1]).get(0);
@@ -211,44 +220,402 @@ public class Main {
         }
     }
 
-    public static
-    void main(String[] args) throws IOException                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                           {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-        LocalDateTime now = LocalDateTime.now();
-        System.out.println(String.format("[%s %d] === Fuzzing operation started ===", dtf.format(LocalDateTime.now()), System.currentTimeMillis()));
+    /**
+     * This method creates a mutation of the given method from the current chain state.
+     *
+     * @param cp                the class parser holding the chain state
+     * @param hi                the mutator, or -1 to remove a previous mutation
+     * @param methodToMutate    method to mutate
+     * @return                  the new MutationStmt, or null if there is no mutation to remove
+     */
+    public static MutationStmt createMutation(ClassParser cp, int hi, Method methodToMutate) {
+        MutationStmt ms;
+        if (hi == -1) {
+            // remove a previous mutation
+            MutationStmt msToRemove = getRandomMutation(methodToMutate, cp.rand);
+            if (msToRemove == null) {
+                return null;
+            }
+            ms = new MutationStmt(msToRemove.METHOD, msToRemove.HI, msToRemove.HP, msToRemove.TPS, cp.nextMutationId(), msToRemove.ID);
+        } else {
+            Object event = FuzzEvents.begin(FuzzEvents.SELECT_HP);
+            int hp = selectHP(methodToMutate, cp.curLivecodeSet, cp.rand);
+            FuzzEvents.end(event, methodToMutate.methodName, hi, String.valueOf(hp));
+            System.out.println(String.format("[%s %d] HP selected: %s", DTF.format(LocalDateTime.now()), System.currentTimeMillis(), hp));
+            ArrayList<Integer> tps = new ArrayList<>();
+            event = FuzzEvents.begin(FuzzEvents.SELECT_TP);
+            if (hi == Opcodes.GOTO) {
+                tps = selectTP(methodToMutate, 1, cp.totalLivecodeSet, cp.curLivecodeSet, cp.rand);
+            } else if (hi == Opcodes.LOOKUPSWITCH || hi == Opcodes.TABLESWITCH) {
+                tps = selectTP(methodToMutate, 3, cp.totalLivecodeSet, cp.curLivecodeSet, cp.rand);
+            }
+            FuzzEvents.end(event, methodToMutate.methodName, hi, tps.toString());
+            System.out.println(String.format("[%s %d] TPs selected: %s", DTF.format(LocalDateTime.now()), System.currentTimeMillis(), tps));
 
-        // parse the seed class file and get method and label information
-        ClassParser cp = new ClassParser();
-        InputStream in = new FileInputStream(Config.SEED_DIR+Config.SEED_CLASS+Config.CLASS_EXT);
-        cp.parseClass(in);
-        System.out.println(cp.methodDictionary.values());
-        in.close();
+            // create new mutation
+            ms = new MutationStmt(methodToMutate.methodName, hi, hp, tps, cp.nextMutationId());
+        }
+        return ms;
+    }
+
+    /**
+     * This method runs one speculative batch: it proposes BATCH_SIZE mutations from the current state,
+     * generates and executes them on the worker pool, and then applies the acceptance test to them in
+     * proposal order. Since a rejection leaves the state unchanged, every candidate up to the first
+     * accepted one is tested against exactly the state it was proposed from, as in the sequential loop.
+     * The candidates after the first accepted one are stale and are discarded.
+     *
+     * @param cp        the class parser holding the chain state
+     * @param pool      the worker pool
+     * @param iter      the current iteration
+     * @return          number of proposals consumed up to the accepted candidate, each counts as one
+     *                  iteration, or -1 if no live method is left
+     */
+    public static int runBatch(ClassParser cp, ExecutorService pool, int iter) throws InterruptedException {
+        // STEP 1-3: propose mutations from the current state, pruned ones are consumed without being run
+        ArrayList<MutationStmt> batch = new ArrayList<>();
+        int pruned = 0;
+        long selectStart = System.nanoTime();
+        for (int k = 0; k < Config.BATCH_SIZE && iter + batch.size() + pruned <= Config.MAX_ITERATIONS; k++) {
+            FuzzEvents.enter(cp.chainId, iter + batch.size() + pruned);
+            int hi = getMutator(cp.rand);
+            Object event = FuzzEvents.begin(FuzzEvents.SELECT_METHOD);
+            Method methodToMutate = selectMethod(new ArrayList<>(cp.methodDictionary.values()), cp.curLivecodeSet, cp.rand);
+            FuzzEvents.end(event, methodToMutate == null ? null : methodToMutate.methodName, hi, methodToMutate == null ? "no live method" : "selected");
+            if (methodToMutate == null) {
+                System.out.println(String.format("[%s %d] Method selected: %s", DTF.format(LocalDateTime.now()), System.currentTimeMillis(), "No live method found"));
+                return -1;
+            }
+            MutationStmt ms = createMutation(cp, hi, methodToMutate);
+            if (ms == null) {
+                continue;
+            }
+            ms.iteration = iter + batch.size() + pruned;
+            String reason = MutantPruner.classify(cp, ms);
+            if (reason != null) {
+                System.out.println(String.format("[%s %d] Mutant pruned: %s %s", DTF.format(LocalDateTime.now()), System.currentTimeMillis(), ms, reason));
+                pruned++;
+            } else {
+                batch.add(ms);
+            }
+        }
+        Metrics.time(Metrics.SELECT, selectStart);
+        return runCandidates(cp, pool, iter, batch, pruned);
+    }
+
+    /**
+     * This method generates and executes the candidates of a speculative batch and applies the acceptance
+     * test to them in proposal order, up to the first accepted one. The candidates after it are cancelled.
+     *
+     * @param cp        the class parser holding the chain state
+     * @param pool      the worker pool
+     * @param iter      the iteration of the first proposal
+     * @param batch     the candidates, their iterations set in proposal order
+     * @param pruned    number of proposals pruned without being run, among the iterations of the batch
+     * @return          number of proposals consumed up to the accepted candidate
+     */
+    static int runCandidates(ClassParser cp, ExecutorService pool, int iter, ArrayList<MutationStmt> batch, int pruned) throws InterruptedException {
+        // STEP 4: generate all mutants before any acceptance changes the mutation state
+        ArrayList<Future<?>> generated = new ArrayList<>();
+        for (final MutationStmt ms : batch) {
+            generated.add(pool.submit(() -> {
+                FuzzEvents.enter(cp.chainId, ms);
+                cp.generateMutant(ms);
+                return null;
+            }));
+        }
+        boolean[] failed = new boolean[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                generated.get(i).get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                failed[i] = true;
+            }
+        }
+
+        // STEP 5: execute concurrently, or forked together in one JVM, select in proposal order
+        ArrayList<Future<ExecutionResult>> executed = new ArrayList<>();
+        AtomicBoolean[] started = new AtomicBoolean[batch.size()];
+        if (!Config.USE_AGENT && Config.FORK_BATCH) {
+            // one harness JVM per worker, each runs its share of the batch one mutant after another
+            ArrayList<Integer> runnable = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                started[i] = new AtomicBoolean(false);
+                executed.add(null);
+                if (!failed[i]) {
+                    runnable.add(i);
+                }
+            }
+            int share = (runnable.size() + Config.WORKERS - 1) / Config.WORKERS;
+            for (int from = 0; from < runnable.size(); from += share) {
+                final List<Integer> part = runnable.subList(from, Math.min(from + share, runnable.size()));
+                CompletableFuture<ArrayList<ExecutionResult>> results = CompletableFuture.supplyAsync(() -> {
+                    ArrayList<MutationStmt> mutants = new ArrayList<>();
+                    for (int i : part) {
+                        started[i].set(true);
+                        mutants.add(batch.get(i));
+                    }
+                    // the harness events are attributed to the first mutant it runs
+                    FuzzEvents.enter(cp.chainId, mutants.get(0));
+                    try {
+                        return cp.evaluateBatch(mutants);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, pool);
+                for (int k = 0; k < part.size(); k++) {
+                    final int idx = k;
+                    executed.set(part.get(k), results.thenApply(r -> r.get(idx)));
+                }
+            }
+        }
+        for (int i = executed.size(); i < batch.size(); i++) {
+            final MutationStmt ms = batch.get(i);
+            final AtomicBoolean s = started[i] = new AtomicBoolean(false);
+            executed.add(failed[i] ? null : pool.submit(() -> {
+                s.set(true);
+                FuzzEvents.enter(cp.chainId, ms);
+                return cp.evaluateMutant(ms);
+            }));
+        }
+        // every proposal is consumed, unless a candidate is accepted
+        int consumed = batch.size() + pruned;
+        for (int i = 0; i < batch.size(); i++) {
+            MutationStmt ms = batch.get(i);
+            if (executed.get(i) == null) {
+                continue;
+            }
+            try {
+                ExecutionResult result = executed.get(i).get();
+                FuzzEvents.enter(cp.chainId, ms);
+                Object event = FuzzEvents.begin(FuzzEvents.SELECT_MUTANT);
+                long acceptStart = System.nanoTime();
+                String res = cp.acceptMutant(ms, result);
+                Metrics.time(Metrics.ACCEPT, acceptStart);
+                FuzzEvents.end(event, res);
+                System.out.println(String.format("[%s %d] Mutant selected: %s %s", DTF.format(LocalDateTime.now()), System.currentTimeMillis(), ms.CLASSNAME, res));
+                recordResult(cp, ms, res);
+                if (res == Config.ACC) {
+                    // the proposals after it, pruned ones included, were drawn from the stale state
+                    consumed = ms.iteration - iter + 1;
+                    for (int j = i + 1; j < batch.size(); j++) {
+                        if (executed.get(j) != null) {
+                            executed.get(j).cancel(false);
+                            if (started[j].get()) {
+                                WASTED.incrementAndGet();
+                            }
+                        }
+                        STALE.incrementAndGet();
+                    }
+                    break;
+                }
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+        return consumed;
+    }
+
+    /**
+     * This method records the result of a mutant and appends it to the result file of the chain.
+     *
+     * @param cp    the class parser holding the chain state
+     * @param ms    the mutation of the mutant
+     * @param res   ACC, REJ, NONLIVE or TIMEOUT
+     */
+    public static void recordResult(ClassParser cp, MutationStmt ms, String res) {
+        recordResult(cp, ms.CLASSNAME, ms, res);
+    }
+
+    /**
+     * This method records the result of a mutant of any class and appends it to the result file of the chain.
+     *
+     * @param cp    the class parser holding the chain state
+     * @param name  the mutant name
+     * @param ms    the mutation of the mutant
+     * @param res   ACC, REJ, NONLIVE or TIMEOUT
+     */
+    public static void recordResult(ClassParser cp, String name, MutationStmt ms, String res) {
+        try {
+            cp.resultOut.write(String.format("%s, %s\n", name, res).getBytes());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        addResult(name, res);
+        Metrics.count(res);
+        if (cp.journal != null) {
+            try {
+                cp.journal.append(ms, res);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (DIFF != null && res == Config.ACC) {
+            try {
+                if (DIFF.check(ms)) {
+                    System.out.println(String.format("[%s %d] Discrepancy found: %s", DTF.format(LocalDateTime.now()), System.currentTimeMillis(), ms.CLASSNAME));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void addResult(String className, String res) {
+        if (res.equals(Config.ACC)) {
+            ACC.add(className);
+        } else if (res.equals(Config.REJ)) {
+            REJ.add(className);
+        } else if (res.equals(Config.NONLIVE)) {
+            NONLIVE.add(className);
+        } else if (res.equals(Config.TIMEOUT)) {
+            TIMEOUT.add(className);
+        }
+    }
+
+    /**
+     * This method names a file of a chain, files of a single chain campaign carry no chain id.
+     *
+     * @param cp    the class parser of the chain
+     * @param ext   extension of the file
+     * @return      the file
+     */
+    public static File chainFile(ClassParser cp, String ext) {
+        return chainFile(cp.chainId, ext);
+    }
 
-        // get livecode list from seed class
-        ArrayList<String> seedLivecode = cp.getLivecode(Config.SEED_DIR, Config.SEED_CLASS);
-        cp.totalLivecodeSet.addAll(seedLivecode);
-        cp.curLivecodeList = seedLivecode;
+    public static File chainFile(int chainId, String ext) {
+        return new File(Config.CHAINS > 1 ? Config.SEED_CLASS+"."+chainId+ext : Config.SEED_CLASS+ext);
+    }
+
+    /**
+     * Picks the class a chain mutates in an iteration and runs and tests its mutants, for chains over
+     * several classes, see ClassScheduler. A chain without one mutates its own class.
+     */
+    public interface ClassPicker {
+        /**
+         * @return  the class parser of the class to mutate, or null if no class is live
+         */
+        ClassParser pick();
+
+        /**
+         * Runs the generated mutant of the picked class and applies the acceptance test to it.
+         *
+         * @param cp            the class parser of the picked class
+         * @param ms            the mutation of the mutant
+         * @return              ACC, REJ, NONLIVE or TIMEOUT
+         * @throws IOException  throws IOException
+         */
+        String select(ClassParser cp, MutationStmt ms) throws IOException;
+    }
 
-        System.out.println("Seed instruction #: " + cp.seedInsnSet.size());
+    /**
+     * This method runs one MCMC chain over its own class for MAX_ITERATIONS iterations.
+     *
+     * @param cp            the class parser holding the chain state
+     * @param pool          the worker pool for speculative batches, or null
+     * @param checkpoint    the checkpoint the chain was restored from, or null to start from the seed
+     * @throws IOException  throws IOException
+     */
+    public static void runChain(ClassParser cp, ExecutorService pool, Checkpoint checkpoint) throws IOException {
+        runChain(cp, null, pool, checkpoint);
+    }
 
-        FileWriter timeWriter = new FileWriter(Config.SEED_CLASS+".time");
+    /**
+     * This method runs one MCMC chain for MAX_ITERATIONS iterations. With a picker every iteration mutates
+     * the class it picks, one mutant at a time and without checkpoints or journal, since those hold the
+     * state of a single class.
+     *
+     * @param chain         the class parser holding the chain state and files
+     * @param picker        picks the class of every iteration, or null to mutate the class of the chain
+     * @param pool          the worker pool for speculative batches, or null
+     * @param checkpoint    the checkpoint the chain was restored from, or null to start from the seed
+     * @throws IOException  throws IOException
+     */
+    public static void runChain(ClassParser chain, ClassPicker picker, ExecutorService pool, Checkpoint checkpoint) throws IOException {
+        DateTimeFormatter dtf = DTF;
+        ClassParser cp = chain;
+        File timeFile = chainFile(cp, ".time");
+        File resultFile = chainFile(cp, ".result");
+        File checkpointFile = chainFile(cp, Config.CHECKPOINT_EXT);
+        if (timeFile.getParentFile() != null) {
+            timeFile.getParentFile().mkdirs();
+        }
 
         int iter = 1;
+        if (checkpoint != null) {
+            // drop what was written after the checkpoint, those iterations are run again
+            Checkpoint.truncate(timeFile, checkpoint.timeLength);
+            Checkpoint.truncate(resultFile, checkpoint.resultLength);
+            BufferedReader reader = new BufferedReader(new FileReader(resultFile));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(", ");
+                if (fields.length == 2) {
+                    addResult(fields[0], fields[1]);
+                }
+            }
+            reader.close();
+            iter = checkpoint.iter;
+        }
+        FileOutputStream timeWriter = new FileOutputStream(timeFile, checkpoint != null);
+        cp.resultOut = new FileOutputStream(resultFile, checkpoint != null);
+        if (picker == null) {
+            cp.journal = new MutationJournal(chainFile(cp, Config.JOURNAL_EXT), cp, checkpoint == null ? 0 : checkpoint.iter);
+        }
+
+        int lastCheckpoint = iter;
         while (iter <= Config.MAX_ITERATIONS) {
+            cp = chain;
+            if (picker == null && Config.CHECKPOINT_INTERVAL > 0 && iter - lastCheckpoint >= Config.CHECKPOINT_INTERVAL) {
+                Checkpoint.save(checkpointFile, cp, iter, timeWriter);
+                lastCheckpoint = iter;
+                System.out.println(String.format("[%s %d] Checkpoint of chain %d saved before iteration #%d", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), cp.chainId, iter));
+            }
             long startTime = System.currentTimeMillis();
+            long iterStart = System.nanoTime();
             try {
-                System.out.println(String.format("[%s %d] === Starting iteration #%d ===", dtf.format(LocalDateTime.now()), startTime, iter));
+                System.out.println(String.format("[%s %d] === Starting iteration #%d of chain %d ===", dtf.format(LocalDateTime.now()), startTime, iter, cp.chainId));
+
+                if (picker == null && pool != null) {
+                    int consumed = runBatch(cp, pool, iter);
+                    if (consumed < 0) {
+                        break;
+                    }
+                    long endTime = System.currentTimeMillis();
+                    timeWriter.write(String.format("%d, %d\n", iter, endTime-startTime).getBytes());
+                    FuzzEvents.iterationEnded(cp.chainId, iter, endTime-startTime);
+                    Metrics.time(Metrics.ITERATION, iterStart);
+                    Metrics.add(Metrics.ITERATIONS, Math.max(consumed, 1));
+                    iter += Math.max(consumed, 1);
+                    continue;
+                }
 
                 // STEP 1: select LBC mutator: picks from goto, return, throw, lookupswitch, tableswitch
-                int hi = getMutator();
+                long selectStart = System.nanoTime();
+                FuzzEvents.enter(chain.chainId, iter);
+                int hi = getMutator(chain.rand);
                 System.out.println(String.format("[%s %d] HI generated: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), getOpcodesStr(hi)));
 
+                // STEP 1.5: select the class to mutate
+                if (picker != null) {
+                    cp = picker.pick();
+                    if (cp == null) {
+                        System.out.println(String.format("[%s %d] No live class found, exit loop.", dtf.format(LocalDateTime.now()), System.currentTimeMillis()));
+                        break;
+                    }
+                    System.out.println(String.format("[%s %d] Class selected: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), cp.className));
+                }
+
                 // STEP 2: select method to mutate based on the potential function
                 if (cp.methodDictionary.size() < 1) {
                     System.out.println(String.format("[%s %d] No method found, exit loop.", dtf.format(LocalDateTime.now()), System.currentTimeMillis()));
                     break;
                 }
-                Method methodToMutate = selectMethod(new ArrayList<>(cp.methodDictionary.values()), cp.curLivecodeList);
+                Object event = FuzzEvents.begin(FuzzEvents.SELECT_METHOD);
+                Method methodToMutate = selectMethod(new ArrayList<>(cp.methodDictionary.values()), cp.curLivecodeSet, cp.rand);
+                FuzzEvents.end(event, methodToMutate == null ? null : methodToMutate.methodName, hi, methodToMutate == null ? "no live method" : "selected");
                 if (methodToMutate == null) {
                     System.out.println(String.format("[%s %d] Method selected: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), "No live method found"));
                     break;
@@ -256,43 +623,28 @@ public class Main {
                 System.out.println(String.format("[%s %d] Method selected: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), methodToMutate.methodName));
 
                 // STEP 3: get mutations
-                MutationStmt ms;
-                if (hi == -1) {
-                    // remove a previous mutation
-                    MutationStmt msToRemove = getRandomMutation(methodToMutate);
-                    if (msToRemove == null) {
-                        continue;
-                    }
-                    ms = new MutationStmt(msToRemove.METHOD, msToRemove.HI, msToRemove.HP, msToRemove.TPS, iter, msToRemove.ID);
-                } else {
-                    int hp = selectHP(methodToMutate, cp.curLivecodeList);
-                    System.out.println(String.format("[%s %d] HP selected: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), hp));
-                    ArrayList<String> tps = new ArrayList<>();
-                    if (hi == Opcodes.GOTO) {
-                        tps = selectTP(methodToMutate, 1, cp.totalLivecodeSet, new HashSet<>(cp.curLivecodeList));
-                    } else if (hi == Opcodes.LOOKUPSWITCH || hi == Opcodes.TABLESWITCH) {
-                        tps = selectTP(methodToMutate, 3, cp.totalLivecodeSet, new HashSet<>(cp.curLivecodeList));
-                    }
-                    System.out.println(String.format("[%s %d] TPs selected: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), tps));
-
-                    // create new mutation
-                    ms = new MutationStmt(methodToMutate.methodName, hi, hp, tps, iter);
+                MutationStmt ms = createMutation(cp, hi, methodToMutate);
+                if (ms == null) {
+                    continue;
                 }
+                ms.iteration = iter;
+                FuzzEvents.enter(chain.chainId, ms);
                 System.out.println(String.format("[%s %d] Mutation generated: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), ms));
 
-                // STEP 4: generate new mutant
-                cp.generateMutant(ms);
-                System.out.println(String.format("[%s %d] Mutant file generated: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), ms.CLASSNAME));
-
-                // STEP 5: select new mutant
-                String res = cp.selectMutant(ms);
-                System.out.println(String.format("[%s %d] Mutant selected: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), res));
-                if (res == Config.ACC) {
-                    ACC.add(ms.CLASSNAME);
-                } else if (res == Config.REJ) {
-                    REJ.add(ms.CLASSNAME);
-                } else if (res == Config.NONLIVE) {
-                    NONLIVE.add(ms.CLASSNAME);
+                // STEP 3.5: drop mutants that provably behave like the current one, the iteration is still counted
+                String reason = MutantPruner.classify(cp, ms);
+                Metrics.time(Metrics.SELECT, selectStart);
+                if (reason != null) {
+                    System.out.println(String.format("[%s %d] Mutant pruned: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), reason));
+                } else {
+                    // STEP 4: generate new mutant
+                    cp.generateMutant(ms);
+                    System.out.println(String.format("[%s %d] Mutant file generated: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), cp.mutantName(ms)));
+
+                    // STEP 5: select new mutant
+                    String res = picker == null ? cp.selectMutant(ms) : picker.select(cp, ms);
+                    System.out.println(String.format("[%s %d] Mutant selected: %s", dtf.format(LocalDateTime.now()), System.currentTimeMillis(), res));
+                    recordResult(chain, cp.mutantName(ms), ms, res);
                 }
 
             } catch(Exception e) {
@@ -300,26 +652,192 @@ public class Main {
             }
             // end of iteration
             long endTime = System.currentTimeMillis();
-            timeWriter.write(String.format("%d, %d\n",iter, endTime-startTime));
+            timeWriter.write(String.format("%d, %d\n",iter, endTime-startTime).getBytes());
+            FuzzEvents.iterationEnded(chain.chainId, iter, endTime-startTime);
+            Metrics.time(Metrics.ITERATION, iterStart);
+            Metrics.count(Metrics.ITERATIONS);
             iter++;
         }
+        if (picker == null && Config.CHECKPOINT_INTERVAL > 0) {
+            // a finished chain is not run again on resume
+            Checkpoint.save(checkpointFile, chain, iter, timeWriter);
+        }
+        timeWriter.close();
+        chain.resultOut.close();
+        if (chain.journal != null) {
+            chain.journal.close();
+        }
+    }
+
+    /**
+     * Runs a campaign, or continues the campaign of the last checkpoints with --resume.
+     *
+     * @param args  --resume to continue from the checkpoints of the chains, --seed n to set the campaign seed
+     */
+    public static
+    void main(String[] args) throws IOException, InterruptedException {
+        DateTimeFormatter dtf = DTF;
+        boolean resume = Arrays.asList(args).contains("--resume");
+        long seed = Config.CAMPAIGN_SEED;
+        int seedArg = Arrays.asList(args).indexOf("--seed");
+        if (seedArg >= 0 && seedArg + 1 < args.length) {
+            seed = Long.parseLong(args[seedArg + 1]);
+        } else if (seed == -1) {
+            seed = new SplittableRandom().nextLong();
+        }
+        System.out.println(String.format("[%s %d] === Fuzzing operation started ===", dtf.format(LocalDateTime.now()), System.currentTimeMillis()));
+        System.out.println(String.format("Campaign seed: %d", seed));
+
+        if (Config.MULTI_CLASS) {
+            ClassScheduler.run(seed, resume);
+            return;
+        }
+
+        // parse the seed class file once per chain, every chain keeps its own mutation state
+        // every chain draws from its own split of the campaign seed, in chain order
+        // the model and seed run of the seed come from the seed cache if an earlier campaign left them
+        SplittableRandom campaign = new SplittableRandom(seed);
+        byte[] seedBytecode = Files.readAllBytes(new File(Config.SEED_DIR+Config.SEED_CLASS+Config.CLASS_EXT).toPath());
+        SeedCache seedCache = Config.SEED_CACHE ? SeedCache.open(seedBytecode) : null;
+        boolean cached = seedCache != null && seedCache.hit();
+        ClassParser[] chains = new ClassParser[Config.CHAINS];
+        for (int k = 0; k < Config.CHAINS; k++) {
+            chains[k] = new ClassParser();
+            chains[k].chainId = k;
+            chains[k].rand = campaign.split();
+            if (cached) {
+                seedCache.restore(chains[k]);
+            } else {
+                chains[k].parseClass(new ByteArrayInputStream(seedBytecode));
+            }
+        }
+        ClassParser cp = chains[0];
+        System.out.println(cp.methodDictionary.values());
+
+        // get livecode list from seed class, the total livecode set is shared by all chains
+        ExecutionResult seedResult;
+        if (cached) {
+            seedResult = seedCache.seedResult();
+            System.out.println(String.format("Seed analysis restored from %s", seedCache.file));
+        } else {
+            seedResult = cp.execute(cp.instrumentedSeed);
+            if (seedCache != null) {
+                seedCache.save(cp, seedResult);
+            }
+        }
+        System.out.println("Seed run: " + seedResult);
+        BitSet seedLivecode = seedResult.livecode;
+        cp.totalLivecodeSet.or(seedLivecode);
+        cp.latency.add(seedResult.time);
+        for (ClassParser chain : chains) {
+            chain.totalLivecodeSet = cp.totalLivecodeSet;
+            chain.latency = cp.latency;
+            chain.jarLatency = cp.jarLatency;
+            chain.cache = cp.cache;
+            chain.curLivecodeSet = (BitSet) seedLivecode.clone();
+            chain.curLivecodeExited = seedResult.outcome.equals(ExecutionResult.EXITED);
+            chain.seedLivecode = seedLivecode;
+        }
+
+        Checkpoint[] checkpoints = new Checkpoint[Config.CHAINS];
+        if (resume) {
+            for (ClassParser chain : chains) {
+                checkpoints[chain.chainId] = Checkpoint.load(chainFile(chain, Config.CHECKPOINT_EXT), chain);
+                System.out.println(checkpoints[chain.chainId] == null
+                        ? String.format("No checkpoint of chain %d, starting it from the seed", chain.chainId)
+                        : String.format("Chain %d resumed at iteration #%d", chain.chainId, checkpoints[chain.chainId].iter));
+            }
+        }
+
+        System.out.println("Seed instruction #: " + cp.insnList.size());
+
+        if (!Config.USE_AGENT) {
+            // forked runs only, before the first mutant is launched
+            CdsArchive.prepare(cp);
+            CdsArchive.gauges();
+        }
+
+        if (Config.DIFF_MODE) {
+            DIFF = new DifferentialExecutor(cp);
+        }
+
+        ExecutorService pool = null;
+        if (Config.BATCH_SIZE > 1) {
+            pool = Executors.newFixedThreadPool(Config.WORKERS);
+        }
+
+        final ClassParser seedParser = cp;
+        Metrics.gauge("coverage", () -> seedParser.totalLivecodeSet.cardinality());
+        Metrics.gauge("seed_insns", () -> seedParser.insnList.size());
+        Metrics.gauge("mutations", () -> {
+            long mutations = 0;
+            for (ClassParser chain : chains) {
+                mutations += chain.mutationCount;
+            }
+            return mutations;
+        });
+        if (cp.cache != null) {
+            Metrics.gauge("cache_hits", () -> seedParser.cache.hits());
+            Metrics.gauge("cache_misses", () -> seedParser.cache.misses());
+        }
+        Metrics.gauge("pruned", MutantPruner::total);
+        Metrics.gauge("stale", STALE::get);
+        Metrics.start(resume);
+        FuzzEvents.start();
+
+        if (Config.CHAINS == 1) {
+            runChain(cp, pool, checkpoints[0]);
+        } else {
+            Thread[] threads = new Thread[Config.CHAINS];
+            for (int k = 0; k < Config.CHAINS; k++) {
+                final ClassParser chain = chains[k];
+                final ExecutorService chainPool = pool;
+                final Checkpoint checkpoint = checkpoints[k];
+                threads[k] = new Thread(() -> {
+                    try {
+                        runChain(chain, chainPool, checkpoint);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                threads[k].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+        }
 
         System.out.println(String.format("[%s %d] === Fuzzing operation finished ===", dtf.format(LocalDateTime.now()), System.currentTimeMillis()));
-        timeWriter.close();
-        // write result to file
-//        File resultFile = new File(Config.SEED_CLASS+".result");
-//        resultFile.createNewFile();
-        FileWriter resultWriter = new FileWriter(Config.SEED_CLASS+".result");
-        for(String m : ACC) {
-            resultWriter.write(String.format("%s, ACC\n", m));
+        FuzzEvents.stop();
+        Metrics.stop();
+        if (pool != null) {
+            pool.shutdown();
+            System.out.println(String.format("Speculative mutants discarded: %d (%d already running)", STALE.get(), WASTED.get()));
         }
-        for(String m : REJ) {
-            resultWriter.write(String.format("%s, REJ\n", m));
+        if (!Config.USE_AGENT) {
+            System.out.println(CdsArchive.report());
         }
-        for(String m : NONLIVE) {
-            resultWriter.write(String.format("%s, NONLIVE\n", m));
+        if (DIFF != null) {
+            DIFF.close();
+            System.out.println(String.format("Differential runs: %d, discrepancies: %d", DIFF.runs, DIFF.discrepancies));
+        }
+        for (ClassParser chain : chains) {
+            chain.close();
+        }
+        if (cp.cache != null) {
+            System.out.println(cp.cache.report());
+        }
+        System.out.println(MutantPruner.report());
+        System.out.println(String.format("Campaign seed: %d", seed));
+        System.out.println(String.format("Results: %d ACC, %d REJ, %d NONLIVE, %d TIMEOUT", ACC.size(), REJ.size(), NONLIVE.size(), TIMEOUT.size()));
+        if (Config.CHAINS > 1) {
+            // the result files of the chains are merged into one
+            OutputStream resultWriter = new FileOutputStream(Config.SEED_CLASS+".result");
+            for (ClassParser chain : chains) {
+                resultWriter.write(Files.readAllBytes(chainFile(chain, ".result").toPath()));
+            }
+            resultWriter.close();
         }
-        resultWriter.close();
     }
 
-}
\ No newline at end of file
+}
@@ -1,30 +1,36 @@
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Hashtable;
 
 public class Method implements Comparable<Method> {
     public String methodName;
     public ArrayList<InsnStmt> insnList;
+    public BitSet insnSet;      // ids of insnList
     public Hashtable<Integer, ArrayList<MutationStmt>> mutationDictionary; // hp -> mutationStmt
     public int mutationCount;
     public ArrayList<MutationStmt> mutationList;
-    public HashSet<String> tpSet;
+    public HashSet<Integer> tpSet;
     public int variableCount;
     public int labelCount;
+    public ArrayList<Integer> labelHeads;  // label index -> id of the insn right after the label, -1 if it is not a seed insn
 
     public Method(String name) {
         methodName = name;
         insnList = new ArrayList<>();
+        insnSet = new BitSet();
         mutationCount = 1;
         tpSet = new HashSet<>();
         variableCount = 0;
         mutationList = new ArrayList<>();
         mutationDictionary = new Hashtable<>();
         labelCount = 0;
+        labelHeads = new ArrayList<>();
     }
 
     public void addInsn(InsnStmt is) {
         this.insnList.add(is);
+        this.insnSet.set(is.id);
     }
 
     public void addMutation(MutationStmt ms) {
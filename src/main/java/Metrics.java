@@ -0,0 +1,291 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of a campaign: a latency histogram per pipeline phase, counters of the mutant results and
+ * gauges read when the metrics are exported, such as the cache hits and the total coverage. Every
+ * METRICS_INTERVAL ms a row is appended to the .metrics.csv file of the seed, so throughput and
+ * coverage can be followed over time, and the .metrics.json file is replaced by a full snapshot. If
+ * METRICS_PORT is set the same snapshot is served as plain text on localhost, in the Prometheus text
+ * format. Shared by all chains.
+ *
+ * Phases are timed where they happen, so a phase of a forked run and of an agent run are both recorded
+ * under RUN. LAUNCH only covers starting the process, the start up of the JVM itself is part of RUN.
+ */
+public class Metrics {
+    public final static String SELECT = "select";           // HI, method, HP and TPs of a proposal, and pruning
+    public final static String MUTATE = "mutate";           // mutateClass and writing the mutant
+    public final static String INSTRUMENT = "instrument";
+    public final static String CACHE = "cache";             // mutant cache lookups
+    public final static String CLASSPATH = "classpath";     // overlay or jar uf
+    public final static String LAUNCH = "launch";
+    public final static String RUN = "run";
+    public final static String TRACE = "trace";             // reading the probes or the trace into a livecode set
+    public final static String ACCEPT = "accept";
+    public final static String ITERATION = "iteration";
+    final static String[] PHASES = {SELECT, MUTATE, INSTRUMENT, CACHE, CLASSPATH, LAUNCH, RUN, TRACE, ACCEPT, ITERATION};
+    final static double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    final static String[] QUANTILE_NAMES = {"50", "90", "99", "999"};
+
+    public final static String ITERATIONS = "iterations";
+    final static String[] COUNTERS = {ITERATIONS, Config.ACC, Config.REJ, Config.NONLIVE, Config.TIMEOUT};
+
+    static final LinkedHashMap<String, Histogram> phases = new LinkedHashMap<>();
+    static final LinkedHashMap<String, AtomicLong> counters = new LinkedHashMap<>();
+    static final LinkedHashMap<String, LongSupplier> gauges = new LinkedHashMap<>();
+    static {
+        for (String phase : PHASES) {
+            phases.put(phase, new Histogram());
+        }
+        for (String counter : COUNTERS) {
+            counters.put(counter, new AtomicLong());
+        }
+    }
+
+    static long startTime;
+    static long lastTime;
+    static long lastIterations;
+    static double rate;
+    static File csvFile;
+    static File jsonFile;
+    static ScheduledExecutorService exporter;
+    static HttpServer server;
+
+    /**
+     * Records the duration of a phase that started at the given time.
+     *
+     * @param phase         the phase
+     * @param startNanos    System.nanoTime() at the start of the phase
+     */
+    public static void time(String phase, long startNanos) {
+        phases.get(phase).record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Records the duration of a phase that was measured elsewhere.
+     *
+     * @param phase     the phase
+     * @param millis    the duration in ms
+     */
+    public static void record(String phase, long millis) {
+        phases.get(phase).record(millis * 1000);
+    }
+
+    public static void count(String counter) {
+        add(counter, 1);
+    }
+
+    public static void add(String counter, long n) {
+        AtomicLong c = counters.get(counter);
+        if (c != null) {
+            c.addAndGet(n);
+        }
+    }
+
+    /**
+     * Registers a value that is read at every export. Gauges must be registered before start.
+     *
+     * @param name      name of the value
+     * @param value     reads the value
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Starts the periodic export, and the endpoint if METRICS_PORT is set.
+     *
+     * @param append        keep the rows of the .metrics.csv file of a previous run, on resume
+     * @throws IOException  throws IOException
+     */
+    public static void start(boolean append) throws IOException {
+        startTime = System.currentTimeMillis();
+        lastTime = startTime;
+        lastIterations = 0;
+        if (Config.METRICS_INTERVAL > 0) {
+            csvFile = new File(Config.SEED_CLASS + Config.METRICS_EXT + ".csv");
+            jsonFile = new File(Config.SEED_CLASS + Config.METRICS_EXT + ".json");
+            if (csvFile.getParentFile() != null) {
+                csvFile.getParentFile().mkdirs();
+            }
+            if (!append || !csvFile.exists()) {
+                Writer csv = new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8);
+                csv.write(csvHeader());
+                csv.close();
+            }
+            exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics");
+                t.setDaemon(true);
+                return t;
+            });
+            exporter.scheduleAtFixedRate(Metrics::export, Config.METRICS_INTERVAL, Config.METRICS_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        if (Config.METRICS_PORT > 0) {
+            try {
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), Config.METRICS_PORT), 0);
+                server.createContext("/metrics", exchange -> {
+                    byte[] body = text().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                });
+                server.start();
+                System.out.println(String.format("Metrics served on http://localhost:%d/metrics", Config.METRICS_PORT));
+            } catch (IOException e) {
+                // the campaign runs without the endpoint
+                e.printStackTrace();
+                server = null;
+            }
+        }
+    }
+
+    /**
+     * Stops the export after writing a last row and snapshot, and the endpoint.
+     */
+    public static void stop() {
+        if (exporter != null) {
+            exporter.shutdown();
+            try {
+                exporter.awaitTermination(Config.METRICS_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            export();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Appends a row to the .metrics.csv file and replaces the .metrics.json file.
+     */
+    static synchronized void export() {
+        long now = System.currentTimeMillis();
+        long iterations = counters.get(ITERATIONS).get();
+        rate = now > lastTime ? 1000.0 * (iterations - lastIterations) / (now - lastTime) : 0.0;
+        lastTime = now;
+        lastIterations = iterations;
+        try {
+            Writer csv = new OutputStreamWriter(new FileOutputStream(csvFile, true), StandardCharsets.UTF_8);
+            csv.write(csvRow(now));
+            csv.close();
+            File tmp = new File(jsonFile.getPath() + ".tmp");
+            Writer json = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8);
+            json.write(json(now));
+            json.close();
+            if (!tmp.renameTo(jsonFile)) {
+                jsonFile.delete();
+                tmp.renameTo(jsonFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static String csvHeader() {
+        StringBuilder sb = new StringBuilder("time,elapsed_ms,iterations_per_second");
+        for (String counter : counters.keySet()) {
+            sb.append(',').append(counter);
+        }
+        for (String gauge : gauges.keySet()) {
+            sb.append(',').append(gauge);
+        }
+        for (String phase : phases.keySet()) {
+            sb.append(',').append(phase).append("_count");
+            for (String q : QUANTILE_NAMES) {
+                sb.append(',').append(phase).append("_p").append(q).append("_us");
+            }
+            sb.append(',').append(phase).append("_max_us");
+        }
+        return sb.append('\n').toString();
+    }
+
+    static String csvRow(long now) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(now).append(',').append(now - startTime).append(',').append(String.format("%.3f", rate));
+        for (AtomicLong counter : counters.values()) {
+            sb.append(',').append(counter.get());
+        }
+        for (LongSupplier gauge : gauges.values()) {
+            sb.append(',').append(gauge.getAsLong());
+        }
+        for (Histogram h : phases.values()) {
+            sb.append(',').append(h.count());
+            for (double q : QUANTILES) {
+                sb.append(',').append(h.percentile(q));
+            }
+            sb.append(',').append(h.max());
+        }
+        return sb.append('\n').toString();
+    }
+
+    static String json(long now) {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append(String.format("  \"time\": %d,\n  \"elapsed_ms\": %d,\n  \"iterations_per_second\": %.3f,\n", now, now - startTime, rate));
+        sb.append("  \"counters\": {");
+        String sep = "";
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+            sb.append(sep).append("\"").append(e.getKey()).append("\": ").append(e.getValue().get());
+            sep = ", ";
+        }
+        sb.append("},\n  \"gauges\": {");
+        sep = "";
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            sb.append(sep).append("\"").append(e.getKey()).append("\": ").append(e.getValue().getAsLong());
+            sep = ", ";
+        }
+        sb.append("},\n  \"phases_us\": {\n");
+        sep = "";
+        for (Map.Entry<String, Histogram> e : phases.entrySet()) {
+            Histogram h = e.getValue();
+            sb.append(sep).append(String.format("    \"%s\": {\"count\": %d, \"sum\": %d", e.getKey(), h.count(), h.sum()));
+            for (int i = 0; i < QUANTILES.length; i++) {
+                sb.append(String.format(", \"p%s\": %d", QUANTILE_NAMES[i], h.percentile(QUANTILES[i])));
+            }
+            sb.append(String.format(", \"max\": %d}", h.max()));
+            sep = ",\n";
+        }
+        return sb.append("\n  }\n}\n").toString();
+    }
+
+    /**
+     * @return  the current metrics in the Prometheus text format
+     */
+    static String text() {
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("classming_uptime_seconds %.3f\n", (now - startTime) / 1000.0));
+        sb.append(String.format("classming_iterations_per_second %.3f\n", now > startTime ? 1000.0 * counters.get(ITERATIONS).get() / (now - startTime) : 0.0));
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+            sb.append(String.format("classming_%s_total %d\n", e.getKey().toLowerCase(), e.getValue().get()));
+        }
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            sb.append(String.format("classming_%s %d\n", e.getKey(), e.getValue().getAsLong()));
+        }
+        sb.append("# TYPE classming_phase_seconds summary\n");
+        for (Map.Entry<String, Histogram> e : phases.entrySet()) {
+            Histogram h = e.getValue();
+            for (double q : QUANTILES) {
+                sb.append(String.format("classming_phase_seconds{phase=\"%s\",quantile=\"%s\"} %.6f\n", e.getKey(), q, h.percentile(q) / 1e6));
+            }
+            sb.append(String.format("classming_phase_seconds_sum{phase=\"%s\"} %.6f\n", e.getKey(), h.sum() / 1e6));
+            sb.append(String.format("classming_phase_seconds_count{phase=\"%s\"} %d\n", e.getKey(), h.count()));
+        }
+        return sb.toString();
+    }
+}
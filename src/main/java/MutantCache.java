@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of recent mutant runs, so that a mutant that was run before is not run again. A mutant is
+ * looked up by the hash of the mutation set it applies, which ignores mutation ids, and then by the
+ * hash of its bytecode, which also catches different mutation sets that produce the same class.
+ * Both maps are bounded to CACHE_SIZE entries and evict the least recently used one. Runs cut short
+ * by the run timeout are not cached, since the timeout changes during a campaign. Shared by all chains.
+ */
+public class MutantCache {
+    final LinkedHashMap<Long, ExecutionResult> bySet;
+    final LinkedHashMap<Long, ExecutionResult> byBytes;
+    public long setHits;
+    public long bytesHits;
+    public long misses;
+
+    public MutantCache(int size) {
+        bySet = lru(size);
+        byBytes = lru(size);
+        setHits = 0;
+        bytesHits = 0;
+        misses = 0;
+    }
+
+    static LinkedHashMap<Long, ExecutionResult> lru(final int size) {
+        return new LinkedHashMap<Long, ExecutionResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ExecutionResult> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Hashes the mutations a mutant applies: those of the chain state, without the one ms removes,
+     * plus ms itself if it adds one. Hooks at one HP are hashed in the order they are emitted, ms first
+     * and then the stacked ones from the newest, since that order changes the class; the HPs themselves
+     * are sorted.
+     *
+     * @param methodDictionary  methods of the chain state
+     * @param ms                the mutation of the mutant
+     * @return                  FNV-1a hash of the mutations
+     */
+    public static long setHash(Map<String, Method> methodDictionary, MutationStmt ms) {
+        ArrayList<String> hps = new ArrayList<>();
+        boolean added = ms.REMOVE < 0;
+        for (Map.Entry<String, Method> method : methodDictionary.entrySet()) {
+            for (Map.Entry<Integer, ArrayList<MutationStmt>> e : method.getValue().mutationDictionary.entrySet()) {
+                StringBuilder sb = new StringBuilder();
+                if (added && method.getKey().equals(ms.METHOD) && e.getKey() == ms.HP) {
+                    sb.append(describe(ms)).append('\n');
+                    added = false;
+                }
+                ArrayList<MutationStmt> msList = e.getValue();
+                for (int i = msList.size() - 1; i >= 0; i--) {
+                    if (msList.get(i).ID != ms.REMOVE) {
+                        sb.append(describe(msList.get(i))).append('\n');
+                    }
+                }
+                if (sb.length() > 0) {
+                    hps.add(sb.toString());
+                }
+            }
+        }
+        if (added) {
+            hps.add(describe(ms) + '\n');
+        }
+        Collections.sort(hps);
+        long h = Fnv.OFFSET;
+        for (String hp : hps) {
+            h = Fnv.add(h, hp);
+        }
+        return h;
+    }
+
+    static String describe(MutationStmt ms) {
+        return ms.METHOD + " " + ms.HI + " " + ms.HP + " " + ms.TPS;
+    }
+
+    /**
+     * Looks up a mutant.
+     *
+     * @param ms    the mutation of the mutant, with its hashes set
+     * @return      a copy of the cached result, or null if the mutant was not run before
+     */
+    public synchronized ExecutionResult get(MutationStmt ms) {
+        ExecutionResult r = bySet.get(ms.setHash);
+        if (r != null) {
+            setHits++;
+            return copy(r);
+        }
+        r = byBytes.get(ms.bytesHash);
+        if (r != null) {
+            bytesHits++;
+            bySet.put(ms.setHash, r);
+            return copy(r);
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(MutationStmt ms, ExecutionResult result) {
+        if (result.outcome.equals(ExecutionResult.TIMEOUT)) {
+            return;
+        }
+        ExecutionResult r = copy(result);
+        bySet.put(ms.setHash, r);
+        byBytes.put(ms.bytesHash, r);
+    }
+
+    static ExecutionResult copy(ExecutionResult r) {
+        // the chain keeps the livecode of an accepted mutant as its current livecode
+        ExecutionResult c = new ExecutionResult((BitSet) r.livecode.clone(), r.outcome);
+        c.traceLength = r.traceLength;
+        c.time = r.time;
+        c.timeout = r.timeout;
+        c.cached = true;
+        return c;
+    }
+
+    public synchronized long hits() {
+        return setHits + bytesHits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return  a line for the campaign summary
+     */
+    public synchronized String report() {
+        long lookups = setHits + bytesHits + misses;
+        return String.format("Mutant cache: %d hits (%d by mutation set, %d by bytecode), %d misses, hit rate %.1f%%",
+                setHits + bytesHits, setHits, bytesHits, misses, lookups == 0 ? 0.0 : 100.0 * (setHits + bytesHits) / lookups);
+    }
+}
@@ -0,0 +1,85 @@
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds proposed mutations whose mutant provably behaves like the current mutant of the chain, so
+ * they are dropped before the mutant is generated and run.
+ *
+ * A hook is emitted right after the label HP, before any hook already there, and its loopcount
+ * variable is invisible to the target. So the new mutant only differs from the current one once its
+ * hook is reached, and a hook that jumps to where it would fall through, or returns right before a
+ * RETURN, changes nothing as long as no other hook at HP is skipped by it. A hook at an HP the current
+ * mutant never reached is never reached by the new one either, but only a run that exited by itself
+ * shows what is unreached: a run killed by a budget misses everything after the kill.
+ */
+public class MutantPruner {
+    public final static String NO_LABEL = "NO_LABEL";               // HP is not a label, the hook is never emitted
+    public final static String GOTO_FALLTHROUGH = "GOTO_FALLTHROUGH"; // GOTO to the label the hook falls through to
+    public final static String RETURN_BEFORE_RETURN = "RETURN_BEFORE_RETURN";
+    public final static String DEAD_HOOK = "DEAD_HOOK";             // the current mutant exited without reaching HP
+
+    public static AtomicInteger noLabel = new AtomicInteger();
+    public static AtomicInteger gotoFallthrough = new AtomicInteger();
+    public static AtomicInteger returnBeforeReturn = new AtomicInteger();
+    public static AtomicInteger deadHook = new AtomicInteger();
+
+    /**
+     * Classifies a proposed mutation against the current chain state.
+     *
+     * @param cp    the class parser holding the chain state
+     * @param ms    the proposed mutation
+     * @return      why the mutant equals the current one, or null if it has to be run
+     */
+    public static String classify(ClassParser cp, MutationStmt ms) {
+        if (ms.REMOVE >= 0) {
+            return null;
+        }
+        Method method = cp.methodDictionary.get(ms.METHOD);
+        if (ms.HP < 0 || ms.HP >= method.labelCount) {
+            return count(NO_LABEL, noLabel);
+        }
+        ArrayList<MutationStmt> others = method.mutationDictionary.get(ms.HP);
+        if (others != null && !others.isEmpty()) {
+            return null;
+        }
+        if (ms.HI == Opcodes.GOTO) {
+            int target = cp.insnList.get(ms.TPS.get(0)).labelIdx;
+            // a target outside the labels emits no jump at all
+            if (target == ms.HP || target < 0 || target >= method.labelCount) {
+                return count(GOTO_FALLTHROUGH, gotoFallthrough);
+            }
+        }
+        int head = method.labelHeads.get(ms.HP);
+        if (head < 0) {
+            return null;
+        }
+        InsnStmt is = cp.insnList.get(head);
+        if (ms.HI == Opcodes.RETURN && is.insnName.equals("Insn") && is.insnContent.equals(String.valueOf(Opcodes.RETURN))) {
+            return count(RETURN_BEFORE_RETURN, returnBeforeReturn);
+        }
+        if (cp.curLivecodeExited && !cp.curLivecodeSet.get(head)) {
+            return count(DEAD_HOOK, deadHook);
+        }
+        return null;
+    }
+
+    static String count(String reason, AtomicInteger counter) {
+        counter.incrementAndGet();
+        return reason;
+    }
+
+    public static int total() {
+        return noLabel.get() + gotoFallthrough.get() + returnBeforeReturn.get() + deadHook.get();
+    }
+
+    /**
+     * @return  a line for the campaign summary
+     */
+    public static String report() {
+        return String.format("Pruned mutants: %d (%d no label, %d goto fall-through, %d return before return, %d dead hook)",
+                total(), noLabel.get(), gotoFallthrough.get(), returnBeforeReturn.get(), deadHook.get());
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Append-only binary record of the mutants of a chain: the mutation, its outcome and its coverage. It
+ * holds everything needed to rebuild any mutant or chain state, coverage included, without running
+ * earlier mutants, see Replay. Records are buffered and synced every JOURNAL_SYNC records and at every
+ * checkpoint. On resume the records from the checkpoint iteration on are cut off, as is a record torn by
+ * a crash.
+ *
+ * The livecode of a mutant is recorded as its difference to the livecode of the chain state it was
+ * proposed in, which starts as the seed livecode of the header, and its first covered insns as a list of
+ * their own. Both are sparse lists of insn ids, usually a handful each.
+ *
+ * File format: int MAGIC, UTF key of the campaign, int chain id, seed livecode as a bitmap as in
+ * Checkpoint, then per mutant: int iteration, int ID, int method index, followed by the UTF method name
+ * the first time an index is used, int HI, int HP, int REMOVE, int tp count and int tps, byte outcome,
+ * int live insns of the mutant, int count and ids of the livecode delta, int count and ids of the insns
+ * it covered first. A mutant cut short by the timeout has empty lists.
+ */
+public class MutationJournal {
+    public final static int MAGIC = 0xC1A55E18;
+    final static String[] OUTCOMES = {Config.ACC, Config.REJ, Config.NONLIVE, Config.TIMEOUT};
+
+    /**
+     * A record of the journal.
+     */
+    public static class Entry {
+        public MutationStmt ms;
+        public String outcome;
+        public int live;
+        public int newCoverage;
+        public BitSet livecodeDelta;    // livecode of the mutant xor that of the chain state it was proposed in
+        public BitSet newlyCovered;     // insns it covered first, not in the total livecode of the campaign
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s %s: %s, %d live insns, %d changed, %d new", ms.iteration, ms.CLASSNAME, ms, outcome, live, livecodeDelta.cardinality(), newCoverage);
+        }
+    }
+
+    final FileOutputStream fos;
+    final DataOutputStream out;
+    final HashMap<String, Integer> methods;
+    int unsynced;
+
+    /**
+     * Opens the journal of a chain.
+     *
+     * @param file          the journal file
+     * @param cp            the class parser of the chain
+     * @param resumeIter    the iteration the chain resumes at, the journal is started over if it is 0 or
+     *                      belongs to another campaign
+     * @throws IOException  throws IOException
+     */
+    public MutationJournal(File file, ClassParser cp, int resumeIter) throws IOException {
+        methods = new HashMap<>();
+        long keep = -1;
+        if (resumeIter > 0 && file.exists()) {
+            keep = validLength(file, cp, resumeIter, methods);
+        }
+        if (keep < 0) {
+            methods.clear();
+            fos = new FileOutputStream(file);
+            out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeUTF(Checkpoint.key(cp));
+            out.writeInt(cp.chainId);
+            Checkpoint.writeBits(out, cp.seedLivecode);
+        } else {
+            Checkpoint.truncate(file, keep);
+            fos = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fos));
+        }
+        unsynced = 0;
+    }
+
+    /**
+     * Finds the length of the records before resumeIter.
+     *
+     * @return  the length, or -1 if the journal is of another campaign
+     */
+    static long validLength(File file, ClassParser cp, int resumeIter, HashMap<String, Integer> methods) throws IOException {
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream in = new DataInputStream(counter);
+            if (in.readInt() != MAGIC || !in.readUTF().equals(Checkpoint.key(cp)) || in.readInt() != cp.chainId) {
+                return -1;
+            }
+            // the records go on from the seed livecode of the first run, not from that of the resumed one
+            Checkpoint.readBits(in);
+            ArrayList<String> names = new ArrayList<>();
+            long valid = counter.count;
+            try {
+                while (true) {
+                    Entry e = readEntry(in, names);
+                    if (e == null || e.ms.iteration >= resumeIter) {
+                        break;
+                    }
+                    valid = counter.count;
+                    methods.put(e.ms.METHOD, names.indexOf(e.ms.METHOD));
+                }
+            } catch (EOFException e) {
+                // a torn record
+            }
+            return valid;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Appends the record of a mutant.
+     *
+     * @param ms            the mutation of the mutant, with its iteration and coverage set
+     * @param outcome       ACC, REJ, NONLIVE or TIMEOUT
+     * @throws IOException  throws IOException
+     */
+    public synchronized void append(MutationStmt ms, String outcome) throws IOException {
+        out.writeInt(ms.iteration);
+        out.writeInt(ms.ID);
+        Integer idx = methods.get(ms.METHOD);
+        if (idx == null) {
+            idx = methods.size();
+            methods.put(ms.METHOD, idx);
+            out.writeInt(idx);
+            out.writeUTF(ms.METHOD);
+        } else {
+            out.writeInt(idx);
+        }
+        out.writeInt(ms.HI);
+        out.writeInt(ms.HP);
+        out.writeInt(ms.REMOVE);
+        out.writeInt(ms.TPS.size());
+        for (int tp : ms.TPS) {
+            out.writeInt(tp);
+        }
+        int o = 0;
+        while (o < OUTCOMES.length - 1 && !OUTCOMES[o].equals(outcome)) {
+            o++;
+        }
+        out.writeByte(o);
+        out.writeInt(ms.live);
+        writeIds(out, ms.livecodeDelta);
+        writeIds(out, ms.newlyCovered);
+        if (++unsynced >= Config.JOURNAL_SYNC) {
+            sync();
+        }
+    }
+
+    public synchronized void sync() throws IOException {
+        out.flush();
+        fos.getFD().sync();
+        unsynced = 0;
+    }
+
+    public synchronized void close() throws IOException {
+        sync();
+        out.close();
+    }
+
+    static void writeIds(DataOutputStream out, BitSet ids) throws IOException {
+        if (ids == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(ids.cardinality());
+        for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1)) {
+            out.writeInt(i);
+        }
+    }
+
+    static BitSet readIds(DataInputStream in) throws IOException {
+        BitSet ids = new BitSet();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ids.set(in.readInt());
+        }
+        return ids;
+    }
+
+    /**
+     * Reads a journal.
+     *
+     * @param file          the journal file
+     * @param key           the key of the campaign, or null to accept any
+     * @return              the records, up to a torn one
+     * @throws IOException  throws IOException, also if the journal is of another campaign
+     */
+    public static ArrayList<Entry> read(File file, String key) throws IOException {
+        return read(file, key, new BitSet());
+    }
+
+    /**
+     * Reads a journal and the seed livecode it starts from.
+     *
+     * @param file          the journal file
+     * @param key           the key of the campaign, or null to accept any
+     * @param seedLivecode  set to the seed livecode of the journal
+     * @return              the records, up to a torn one
+     * @throws IOException  throws IOException, also if the journal is of another campaign
+     */
+    public static ArrayList<Entry> read(File file, String key, BitSet seedLivecode) throws IOException {
+        ArrayList<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a mutation journal");
+            }
+            String fileKey = in.readUTF();
+            if (key != null && !fileKey.equals(key)) {
+                throw new IOException(file + " is of campaign " + fileKey + ", not " + key);
+            }
+            in.readInt();
+            seedLivecode.clear();
+            seedLivecode.or(Checkpoint.readBits(in));
+            ArrayList<String> names = new ArrayList<>();
+            try {
+                Entry e;
+                while ((e = readEntry(in, names)) != null) {
+                    entries.add(e);
+                }
+            } catch (EOFException e) {
+                // a torn record
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return  the next record, or null at the end of the journal
+     */
+    static Entry readEntry(DataInputStream in, ArrayList<String> names) throws IOException {
+        int iteration;
+        try {
+            iteration = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        int id = in.readInt();
+        int idx = in.readInt();
+        if (idx == names.size()) {
+            names.add(in.readUTF());
+        }
+        String method = names.get(idx);
+        int hi = in.readInt();
+        int hp = in.readInt();
+        int remove = in.readInt();
+        ArrayList<Integer> tps = new ArrayList<>();
+        int tpCount = in.readInt();
+        for (int i = 0; i < tpCount; i++) {
+            tps.add(in.readInt());
+        }
+        Entry e = new Entry();
+        e.ms = new MutationStmt(method, hi, hp, tps, id, remove);
+        e.ms.iteration = iteration;
+        e.outcome = OUTCOMES[in.readByte()];
+        e.live = in.readInt();
+        e.livecodeDelta = readIds(in);
+        e.newlyCovered = readIds(in);
+        e.newCoverage = e.newlyCovered.cardinality();
+        return e;
+    }
+
+    /**
+     * Counts the bytes read, so that the end of the last whole record is known.
+     */
+    static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+            count = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -1,20 +1,29 @@
 import org.objectweb.asm.Label;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Hashtable;
 
 public class MutationStmt {
     final public String METHOD;
     final public int HI;
     final public int HP;
-    final public ArrayList<String> TPS;
+    final public ArrayList<Integer> TPS;
     final public int ID;
     final public String CLASSNAME;
     final public int REMOVE;
     int loopVar;
-    Hashtable<String, Label> labelDict;
+    Hashtable<Integer, Label> labelDict;
+    byte[] instrumented;        // instrumented mutant, kept from generation until it has been run
+    long setHash;               // keys of the mutant cache, set when the mutant is generated
+    long bytesHash;
+    int iteration;              // iteration the mutation was proposed in
+    int live;                   // live insns of the mutant and those it covered first, set by the acceptance test
+    int newCoverage;
+    BitSet livecodeDelta;       // livecode of the mutant xor that of the chain state it was proposed in, null if not run to the end
+    BitSet newlyCovered;        // insns the mutant covered first, null if not run to the end
 
-    public MutationStmt(String method, int hi, int hp, ArrayList<String> tps, int id) {
+    public MutationStmt(String method, int hi, int hp, ArrayList<Integer> tps, int id) {
         METHOD = method;
         HI = hi;
         HP = hp;
@@ -25,7 +34,7 @@ public class MutationStmt {
         labelDict = new Hashtable<>();
     }
 
-    public MutationStmt(String method, int hi, int hp, ArrayList<String> tps, int id, int remove) {
+    public MutationStmt(String method, int hi, int hp, ArrayList<Integer> tps, int id, int remove) {
         METHOD = method;
         HI = hi;
         HP = hp;
@@ -36,18 +45,18 @@ public class MutationStmt {
         labelDict = new Hashtable<>();
     }
 
-    public void addLabel(String tp, Label l) {
+    public void addLabel(int tp, Label l) {
         labelDict.put(tp, l);
     }
 
-    public Label getLabel(String tp) {
+    public Label getLabel(int tp) {
         return labelDict.get(tp);
     }
 
     @Override
     public String toString() {
         String tp = "";
-        for(String t : TPS) {
+        for(int t : TPS) {
             tp = tp + t + " ";
         }
         return "[" + Main.getOpcodesStr(HI) + "]" + " from " + HP + " to " + tp + "in " + METHOD;
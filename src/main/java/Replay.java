@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Rebuilds a mutant, or the chain state before an iteration, from the mutation journal of a chain and the
+ * seed, without running anything. The mutations accepted before the iteration are applied to the parsed
+ * seed in journal order, as the chain applied them, and the class is generated from that state. The class
+ * is written under its own name below the output directory, so it can be run in front of the target jar:
+ * java -cp replay/:xalan.jar org.apache.xalan.xslt.Process
+ *
+ * The coverage is rebuilt the same way: the current livecode from the seed livecode and the livecode
+ * deltas of the accepted mutants, the total livecode from the seed livecode and the insns they covered
+ * first, also those of the other chains when their journals are next to this one, and the coverage value
+ * from the current livecode. The live insns of the rebuilt class are written next to it, one id and
+ * identifier per line, to a LIVECODE_EXT file, and with --state those of the total to a COVERAGE_EXT file.
+ *
+ * Usage: Replay &lt;journal&gt; &lt;iteration&gt; [--state] [output dir]
+ *
+ * Without --state the mutant proposed at the iteration is rebuilt, with --state the current mutant of the
+ * chain when the iteration started, the seed if nothing was accepted yet.
+ */
+public class Replay {
+    public final static String OUTPUT_DIR = "replay/";
+    public final static String LIVECODE_EXT = ".livecode";
+    public final static String COVERAGE_EXT = ".coverage";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: Replay <journal> <iteration> [--state] [output dir]");
+            return;
+        }
+        File journal = new File(args[0]);
+        int iteration = Integer.parseInt(args[1]);
+        boolean state = false;
+        String outputDir = OUTPUT_DIR;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--state")) {
+                state = true;
+            } else {
+                outputDir = args[i].endsWith("/") ? args[i] : args[i] + "/";
+            }
+        }
+
+        ClassParser cp = new ClassParser();
+        InputStream in = new FileInputStream(Config.SEED_DIR+Config.SEED_CLASS+Config.CLASS_EXT);
+        cp.parseClass(in);
+        in.close();
+        BitSet seedLivecode = new BitSet();
+        ArrayList<MutationJournal.Entry> entries = MutationJournal.read(journal, Checkpoint.key(cp), seedLivecode);
+
+        // the mutations accepted before the iteration, and the coverage of the chain state they lead to
+        ArrayList<MutationJournal.Entry> accepted = new ArrayList<>();
+        MutationJournal.Entry target = null;
+        BitSet curLivecode = (BitSet) seedLivecode.clone();
+        BitSet totalLivecode = (BitSet) seedLivecode.clone();
+        BitSet targetLivecode = null;
+        for (MutationJournal.Entry e : entries) {
+            if (e.ms.iteration == iteration) {
+                target = e;
+                targetLivecode = (BitSet) curLivecode.clone();
+                targetLivecode.xor(e.livecodeDelta);
+            }
+            if (e.ms.iteration < iteration && e.outcome.equals(Config.ACC)) {
+                accepted.add(e);
+                curLivecode.xor(e.livecodeDelta);
+                totalLivecode.or(e.newlyCovered);
+            }
+        }
+        if (Config.CHAINS > 1) {
+            for (int k = 0; k < Config.CHAINS; k++) {
+                File other = new File(journal.getAbsoluteFile().getParentFile(), Main.chainFile(k, Config.JOURNAL_EXT).getName());
+                if (other.exists() && !other.getCanonicalFile().equals(journal.getCanonicalFile())) {
+                    for (MutationJournal.Entry e : MutationJournal.read(other, Checkpoint.key(cp))) {
+                        if (e.ms.iteration < iteration && e.outcome.equals(Config.ACC)) {
+                            totalLivecode.or(e.newlyCovered);
+                        }
+                    }
+                }
+            }
+        }
+        if (state) {
+            // the current mutant is the last accepted one, generated from the state before it
+            target = accepted.isEmpty() ? null : accepted.remove(accepted.size() - 1);
+            targetLivecode = curLivecode;
+            cp.curLivecodeSet = curLivecode;
+            cp.totalLivecodeSet.or(totalLivecode);
+            cp.curCoverSeedVal = target == null ? 0.0 : cp.coverSeed(curLivecode);
+        } else if (target == null) {
+            System.out.println(String.format("No mutant was run at iteration #%d", iteration));
+            return;
+        }
+
+        for (MutationJournal.Entry e : accepted) {
+            cp.methodDictionary.get(e.ms.METHOD).addMutation(e.ms);
+            cp.mutationCount++;
+        }
+        byte[] bytecode = target == null ? cp.seedBytecode : cp.mutateClass(target.ms);
+
+        for (MutationJournal.Entry e : accepted) {
+            System.out.println("applied  " + e);
+        }
+        System.out.println(target == null ? "seed" : (state ? "current  " : "mutant   ") + target);
+        File out = new File(outputDir+Config.SEED_CLASS+Config.CLASS_EXT);
+        ClassParser.writeClassFile(out, bytecode);
+        System.out.println(String.format("Written to %s", out));
+
+        File livecodeFile = new File(outputDir+Config.SEED_CLASS+LIVECODE_EXT);
+        writeLivecode(livecodeFile, cp, targetLivecode);
+        System.out.println(String.format("Livecode: %d insns, written to %s", targetLivecode.cardinality(), livecodeFile));
+        if (state) {
+            File coverageFile = new File(outputDir+Config.SEED_CLASS+COVERAGE_EXT);
+            writeLivecode(coverageFile, cp, totalLivecode);
+            System.out.println(String.format("Total livecode: %d of %d insns, written to %s", cp.totalLivecodeSet.cardinality(), cp.insnList.size(), coverageFile));
+            System.out.println(String.format("Coverage value: %f", cp.curCoverSeedVal));
+        }
+    }
+
+    static void writeLivecode(File file, ClassParser cp, BitSet livecode) throws IOException {
+        PrintWriter out = new PrintWriter(file);
+        for (int i = livecode.nextSetBit(0); i >= 0; i = livecode.nextSetBit(i + 1)) {
+            out.println(i + " " + (i < cp.insnList.size() ? cp.insnList.get(i).identifier() : ""));
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * On-disk cache of the seed analysis: the parsed seed model, the instrumented seed and the livecode of
+ * the seed run. Entries live in SEED_CACHE_DIR, named after the hash of their key, so campaigns on the
+ * same seed share them, restarted or in parallel. The key holds the content hashes of the seed class and
+ * the target jar, the JVM that ran the seed, the probe mode, how the seed was run (agent or forked,
+ * launch profile, CDS), since the cached run time seeds the run timeouts, and VERSION, which is bumped
+ * whenever the model or its livecode changes meaning. On a hit no seed is parsed, instrumented or run.
+ *
+ * Entries are written to a temporary file and moved into place, so a reader never sees a partial entry.
+ * Only seed runs that exited by themselves with livecode are cached; a run cut short by a budget or the
+ * timeout, or one the agent failed, would otherwise be the start of every later campaign.
+ *
+ * File format: int MAGIC, int VERSION, UTF key, int length of the rest, the seed run: bitmap of its livecode as in Checkpoint,
+ * long time, long timeout and long trace length, then the model: UTF class name, int length and bytes
+ * of the seed and of the instrumented seed, int ClassParser.methodCount, then the insns: int count, per
+ * insn UTF name, UTF content, UTF method, int insnIdx, boolean isDefUse, int labelIdx, int id. Insns
+ * are referred to by their index in this list: int count and indexes of ClassParser.insnList, int count
+ * and per entry UTF identifier and index of insnDict, int method count and per method UTF name, int
+ * labelCount, int variableCount, int count and indexes of its insns, int count and label heads, int
+ * table count and per table UTF method name, int row count and per row int count and indexes.
+ */
+public class SeedCache {
+    public final static int MAGIC = 0xC1A55EDC;
+    public final static int VERSION = 2;
+
+    public final String key;
+    public final File file;
+    byte[] entry;       // the cached entry after the key, null on a miss
+
+    SeedCache(String key, File file) {
+        this.key = key;
+        this.file = file;
+        entry = null;
+    }
+
+    /**
+     * Identifies a seed analysis, an entry with another key is of another seed, jar or JVM.
+     *
+     * @param seedBytecode  the seed class
+     * @return              the key
+     * @throws IOException  throws IOException if the jar cannot be read
+     */
+    static String key(byte[] seedBytecode) throws IOException {
+        File jar = new File(Config.JAR_FILE);
+        long jarHash = jar.exists() ? Fnv.hash(Files.readAllBytes(jar.toPath())) : 0;
+        return String.format("%d:%s:%016x:%016x:%s:%s:%b:%b:%s:%b", VERSION, Config.SEED_CLASS, Fnv.hash(seedBytecode), jarHash,
+                System.getProperty("java.home"), System.getProperty("java.version"), Config.PROBE_MODE,
+                Config.USE_AGENT, String.join(" ", Config.LAUNCH_PROFILE), Config.USE_CDS);
+    }
+
+    /**
+     * Looks up the cached analysis of a seed.
+     *
+     * @param seedBytecode  the seed class
+     * @return              the cache of the seed, hit or not
+     * @throws IOException  throws IOException if the jar cannot be read
+     */
+    public static SeedCache open(byte[] seedBytecode) throws IOException {
+        String key = key(seedBytecode);
+        return open(key, new File(Config.SEED_CACHE_DIR, String.format("%016x", Fnv.hash(key.getBytes(StandardCharsets.UTF_8))) + Config.SEED_CACHE_EXT));
+    }
+
+    /**
+     * Reads the entry of a key from a file.
+     *
+     * @param key   the key
+     * @param file  the entry file
+     * @return      the cache, a miss if the file is missing, of another key, or cut short
+     */
+    static SeedCache open(String key, File file) {
+        SeedCache cache = new SeedCache(key, file);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readUTF().equals(key)) {
+                    cache.entry = readArray(in);
+                }
+            } catch (IOException e) {
+                // unreadable, it is written again
+                cache.entry = null;
+            }
+        }
+        return cache;
+    }
+
+    public boolean hit() {
+        return entry != null;
+    }
+
+    /**
+     * Restores the seed model into a new class parser, in place of parseClass. Every chain gets its own
+     * copy, since the Method models also hold the mutations of the chain.
+     *
+     * @param cp            a class parser that has not parsed anything
+     * @throws IOException  throws IOException if the entry is cut short
+     */
+    public void restore(ClassParser cp) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+        readSeedResult(in);
+        cp.className = in.readUTF();
+        cp.seedBytecode = readArray(in);
+        cp.instrumentedSeed = readArray(in);
+        cp.methodCount = in.readInt();
+
+        InsnStmt[] insns = new InsnStmt[in.readInt()];
+        for (int i = 0; i < insns.length; i++) {
+            String name = in.readUTF();
+            String content = in.readUTF();
+            String method = in.readUTF();
+            int insnIdx = in.readInt();
+            boolean isDefUse = in.readBoolean();
+            insns[i] = new InsnStmt(name, content, method, insnIdx, isDefUse, in.readInt());
+            insns[i].id = in.readInt();
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            cp.insnList.add(insns[in.readInt()]);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String identifier = in.readUTF();
+            cp.insnDict.put(identifier, insns[in.readInt()]);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Method method = new Method(in.readUTF());
+            method.labelCount = in.readInt();
+            method.variableCount = in.readInt();
+            int size = in.readInt();
+            for (int j = 0; j < size; j++) {
+                method.addInsn(insns[in.readInt()]);
+            }
+            size = in.readInt();
+            for (int j = 0; j < size; j++) {
+                method.labelHeads.add(in.readInt());
+            }
+            cp.methodDictionary.put(method.methodName, method);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String methodName = in.readUTF();
+            ArrayList<InsnStmt[]> table = new ArrayList<>();
+            int rows = in.readInt();
+            for (int j = 0; j < rows; j++) {
+                InsnStmt[] candidates = new InsnStmt[in.readInt()];
+                for (int k = 0; k < candidates.length; k++) {
+                    candidates[k] = insns[in.readInt()];
+                }
+                table.add(candidates);
+            }
+            cp.insnTable.put(methodName, table);
+        }
+        cp.totalLivecodeSet = new SharedCoverage(cp.insnList.size());
+    }
+
+    /**
+     * @return              the cached seed run
+     * @throws IOException  throws IOException if the entry is cut short
+     */
+    public ExecutionResult seedResult() throws IOException {
+        return readSeedResult(new DataInputStream(new ByteArrayInputStream(entry)));
+    }
+
+    static ExecutionResult readSeedResult(DataInputStream in) throws IOException {
+        ExecutionResult result = new ExecutionResult(Checkpoint.readBits(in), ExecutionResult.EXITED);
+        result.time = in.readLong();
+        result.timeout = in.readLong();
+        result.traceLength = in.readLong();
+        result.cached = true;
+        return result;
+    }
+
+    /**
+     * Stores the analysis of a freshly parsed seed and its seed run, if the run exited by itself with
+     * livecode. Failures are only printed, the campaign goes on without the entry.
+     *
+     * @param cp        the class parser that parsed the seed
+     * @param result    the seed run
+     */
+    public void save(ClassParser cp, ExecutionResult result) {
+        if (!result.outcome.equals(ExecutionResult.EXITED) || result.livecode.isEmpty()) {
+            System.out.println(String.format("Seed run not cached: %s", result));
+            return;
+        }
+        File tmp = null;
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream entryOut = new DataOutputStream(body);
+            Checkpoint.writeBits(entryOut, result.livecode);
+            entryOut.writeLong(result.time);
+            entryOut.writeLong(result.timeout);
+            entryOut.writeLong(result.traceLength);
+            writeModel(entryOut, cp);
+            entryOut.close();
+
+            // next to the entry, so that the move stays on one file system
+            File dir = file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            tmp = File.createTempFile("seed", ".tmp", dir);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            writeArray(out, body.toByteArray());
+            out.close();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println(String.format("Seed analysis cached in %s", file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    static void writeModel(DataOutputStream out, ClassParser cp) throws IOException {
+        out.writeUTF(cp.className);
+        writeArray(out, cp.seedBytecode);
+        writeArray(out, cp.instrumentedSeed);
+        out.writeInt(cp.methodCount);
+
+        // every insn object once, shared ones are shared again after the restore
+        IdentityHashMap<InsnStmt, Integer> index = new IdentityHashMap<>();
+        ArrayList<InsnStmt> insns = new ArrayList<>();
+        ArrayList<InsnStmt> reachable = new ArrayList<>(cp.insnList);
+        reachable.addAll(cp.insnDict.values());
+        for (Method method : cp.methodDictionary.values()) {
+            reachable.addAll(method.insnList);
+        }
+        for (ArrayList<InsnStmt[]> table : cp.insnTable.values()) {
+            for (InsnStmt[] candidates : table) {
+                reachable.addAll(Arrays.asList(candidates));
+            }
+        }
+        for (InsnStmt is : reachable) {
+            if (!index.containsKey(is)) {
+                index.put(is, insns.size());
+                insns.add(is);
+            }
+        }
+        out.writeInt(insns.size());
+        for (InsnStmt is : insns) {
+            out.writeUTF(is.insnName);
+            out.writeUTF(is.insnContent);
+            out.writeUTF(is.methodName);
+            out.writeInt(is.insnIdx);
+            out.writeBoolean(is.isDefUse);
+            out.writeInt(is.labelIdx);
+            out.writeInt(is.id);
+        }
+        out.writeInt(cp.insnList.size());
+        for (InsnStmt is : cp.insnList) {
+            out.writeInt(index.get(is));
+        }
+        out.writeInt(cp.insnDict.size());
+        for (Map.Entry<String, InsnStmt> e : cp.insnDict.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(index.get(e.getValue()));
+        }
+        out.writeInt(cp.methodDictionary.size());
+        for (Method method : cp.methodDictionary.values()) {
+            out.writeUTF(method.methodName);
+            out.writeInt(method.labelCount);
+            out.writeInt(method.variableCount);
+            out.writeInt(method.insnList.size());
+            for (InsnStmt is : method.insnList) {
+                out.writeInt(index.get(is));
+            }
+            out.writeInt(method.labelHeads.size());
+            for (int head : method.labelHeads) {
+                out.writeInt(head);
+            }
+        }
+        out.writeInt(cp.insnTable.size());
+        for (Map.Entry<String, ArrayList<InsnStmt[]>> e : cp.insnTable.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue().size());
+            for (InsnStmt[] candidates : e.getValue()) {
+                out.writeInt(candidates.length);
+                for (InsnStmt is : candidates) {
+                    out.writeInt(index.get(is));
+                }
+            }
+        }
+    }
+
+    static void writeArray(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readArray(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Livecode of all chains of a campaign, indexed by insn id. Bits are only ever set, so chains can
+ * read it without locking while others merge their livecode into it.
+ */
+public class SharedCoverage {
+    final AtomicLongArray words;
+
+    public SharedCoverage(int size) {
+        words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    public boolean get(int id) {
+        int w = id >>> 6;
+        return w < words.length() && (words.get(w) & (1L << id)) != 0;
+    }
+
+    public void or(BitSet livecode) {
+        long[] bits = livecode.toLongArray();
+        for (int w = 0; w < bits.length && w < words.length(); w++) {
+            if (bits[w] != 0 && (words.get(w) | bits[w]) != words.get(w)) {
+                words.accumulateAndGet(w, bits[w], (a, b) -> a | b);
+            }
+        }
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (int w = 0; w < words.length(); w++) {
+            count += Long.bitCount(words.get(w));
+        }
+        return count;
+    }
+
+    public BitSet toBitSet() {
+        long[] bits = new long[words.length()];
+        for (int w = 0; w < bits.length; w++) {
+            bits[w] = words.get(w);
+        }
+        return BitSet.valueOf(bits);
+    }
+}
@@ -0,0 +1,137 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * A chain a few mutations into a campaign, with result and time files of some length.
+     */
+    ClassParser chain(FileOutputStream timeOut) throws IOException {
+        ClassParser cp = Seeds.parse();
+        cp.resultOut = new FileOutputStream(tmp.newFile());
+        cp.resultOut.write(new byte[123]);
+        timeOut.write(new byte[45]);
+
+        Method main = Seeds.main(cp);
+        MutationStmt m1 = new MutationStmt(main.methodName, 2, 0, Seeds.tps(1, 3), cp.nextMutationId());
+        MutationStmt m2 = new MutationStmt(main.methodName, 4, 0, Seeds.tps(2), cp.nextMutationId());
+        MutationStmt m3 = new MutationStmt(main.methodName, 1, 1, Seeds.tps(0, 2, 5), cp.nextMutationId());
+        main.addMutation(m1);
+        main.addMutation(m2);
+        main.addMutation(m3);
+        main.addMutation(new MutationStmt(main.methodName, -1, -1, new ArrayList<>(), cp.nextMutationId(), m2.ID));
+        cp.mutationCount = 7;
+        cp.curCoverSeedVal = 0.625;
+        cp.curLivecodeSet = new BitSet();
+        cp.curLivecodeSet.set(1, 5);
+        cp.curLivecodeExited = true;
+        BitSet total = new BitSet();
+        total.set(0, 8);
+        cp.totalLivecodeSet.or(total);
+        return cp;
+    }
+
+    static String describe(Method method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method.methodName).append(' ').append(method.mutationCount).append(" list");
+        for (MutationStmt ms : method.mutationList) {
+            sb.append(' ').append(ms.ID).append(':').append(ms.REMOVE).append(':').append(ms.HI).append(':').append(ms.HP).append(':').append(ms.TPS);
+        }
+        sb.append(" tps ").append(new TreeSet<>(method.tpSet)).append(" hps");
+        for (int hp : new TreeSet<>(method.mutationDictionary.keySet())) {
+            sb.append(' ').append(hp).append('=');
+            for (MutationStmt ms : method.mutationDictionary.get(hp)) {
+                sb.append(ms.ID).append(',');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = tmp.newFile("chain.ckpt");
+        FileOutputStream timeOut = new FileOutputStream(tmp.newFile());
+        ClassParser cp = chain(timeOut);
+        Checkpoint.save(file, cp, 17, timeOut);
+
+        ClassParser resumed = Seeds.parse();
+        Checkpoint c = Checkpoint.load(file, resumed);
+        assertNotNull(c);
+        assertEquals(17, c.iter);
+        assertEquals(123, c.resultLength);
+        assertEquals(45, c.timeLength);
+        assertEquals(cp.chainMutationCount, resumed.chainMutationCount);
+        assertEquals(7, resumed.mutationCount);
+        assertEquals(0.625, resumed.curCoverSeedVal, 0);
+        assertEquals(cp.curLivecodeSet, resumed.curLivecodeSet);
+        assertTrue(resumed.curLivecodeExited);
+        assertEquals(cp.totalLivecodeSet.toBitSet(), resumed.totalLivecodeSet.toBitSet());
+        for (Method method : cp.methodDictionary.values()) {
+            assertEquals(describe(method), describe(resumed.methodDictionary.get(method.methodName)));
+        }
+        // the dictionary refers to the mutations of the list
+        Method main = Seeds.main(resumed);
+        assertSame(main.mutationList.get(0), main.mutationDictionary.get(0).get(0));
+        // the chain goes on with the same random source
+        assertEquals(cp.rand.nextLong(), resumed.rand.nextLong());
+        cp.resultOut.close();
+        timeOut.close();
+    }
+
+    @Test
+    public void otherCampaign() throws IOException {
+        File file = tmp.newFile("chain.ckpt");
+        FileOutputStream timeOut = new FileOutputStream(tmp.newFile());
+        ClassParser cp = chain(timeOut);
+        Checkpoint.save(file, cp, 17, timeOut);
+
+        ClassParser other = Seeds.parse();
+        other.seedBytecode = new byte[]{1, 2, 3};
+        assertNull(Checkpoint.load(file, other));
+        assertNull(Checkpoint.load(new File(tmp.getRoot(), "missing.ckpt"), Seeds.parse()));
+        cp.resultOut.close();
+        timeOut.close();
+    }
+
+    @Test
+    public void truncatedCheckpointChangesNothing() throws IOException {
+        File file = tmp.newFile("chain.ckpt");
+        FileOutputStream timeOut = new FileOutputStream(tmp.newFile());
+        ClassParser cp = chain(timeOut);
+        Checkpoint.save(file, cp, 17, timeOut);
+        Checkpoint.truncate(file, file.length() - 5);
+
+        ClassParser resumed = Seeds.parse();
+        assertNull(Checkpoint.load(file, resumed));
+        assertEquals(0, resumed.mutationCount);
+        assertEquals(0, resumed.chainMutationCount);
+        assertTrue(resumed.totalLivecodeSet.toBitSet().isEmpty());
+        assertTrue(Seeds.main(resumed).mutationList.isEmpty());
+        cp.resultOut.close();
+        timeOut.close();
+    }
+
+    @Test
+    public void truncateOnlyShortens() throws IOException {
+        File file = tmp.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[100]);
+        }
+        Checkpoint.truncate(file, 200);
+        assertEquals(100, file.length());
+        Checkpoint.truncate(file, 60);
+        assertEquals(60, file.length());
+    }
+}
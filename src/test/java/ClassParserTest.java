@@ -0,0 +1,56 @@
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ClassParserTest {
+
+    static HashMap<String, String> model(ClassParser cp) {
+        HashMap<String, String> model = new HashMap<>();
+        for (Method method : cp.methodDictionary.values()) {
+            model.put(method.methodName, method.variableCount + " " + method.labelCount + " " + method.mutationCount + " " + method.labelHeads);
+        }
+        return model;
+    }
+
+    @Test
+    public void mutatingLeavesTheSeedModelUnchanged() throws Exception {
+        ClassParser cp = Seeds.parse();
+        Method main = Seeds.main(cp);
+        main.addMutation(new MutationStmt(main.methodName, Opcodes.RETURN, 0, Seeds.tps(), cp.nextMutationId()));
+        HashMap<String, String> before = model(cp);
+        cp.mutateClass(new MutationStmt(main.methodName, Opcodes.RETURN, 0, Seeds.tps(), cp.nextMutationId()));
+        assertEquals(before, model(cp));
+    }
+
+    @Test
+    public void concurrentMutantsMatchSequentialOnes() throws Exception {
+        ClassParser cp = Seeds.parse();
+        Method main = Seeds.main(cp);
+        ArrayList<MutationStmt> batch = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            batch.add(new MutationStmt(main.methodName, i % 2 == 0 ? Opcodes.RETURN : Opcodes.ATHROW, 0, Seeds.tps(), cp.nextMutationId()));
+        }
+        ArrayList<byte[]> sequential = new ArrayList<>();
+        for (MutationStmt ms : batch) {
+            sequential.add(cp.mutateClass(ms));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<byte[]>> concurrent = new ArrayList<>();
+        for (MutationStmt ms : batch) {
+            concurrent.add(pool.submit(() -> cp.mutateClass(ms)));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            assertArrayEquals(sequential.get(i), concurrent.get(i).get());
+        }
+        pool.shutdown();
+    }
+}
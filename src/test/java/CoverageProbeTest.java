@@ -0,0 +1,93 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.*;
+
+public class CoverageProbeTest {
+
+    @Before
+    @After
+    public void reset() {
+        CoverageProbe.reset();
+    }
+
+    static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+
+    @Test
+    public void roundTrip() {
+        byte[] a = CoverageProbe.register("a/A", 20);
+        byte[] b = CoverageProbe.register("b/B", 3);
+        CoverageProbe.register("c/C", 0);
+        a[0] = 1;
+        a[7] = 1;
+        a[8] = 1;
+        a[19] = 1;
+        b[2] = 1;
+
+        LinkedHashMap<String, BitSet> coverage = CoverageProbe.read(new ByteArrayInputStream(CoverageProbe.snapshot()));
+        assertEquals(Arrays.asList("a/A", "b/B", "c/C"), new ArrayList<>(coverage.keySet()));
+        assertEquals(bits(0, 7, 8, 19), coverage.get("a/A"));
+        assertEquals(bits(2), coverage.get("b/B"));
+        assertTrue(coverage.get("c/C").isEmpty());
+    }
+
+    @Test
+    public void dumpLength() throws IOException {
+        CoverageProbe.register("A", 9);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        CoverageProbe.dump(bos);
+        // magic, count, UTF name, slot count, two bytes of bits
+        assertEquals(4 + 4 + 2 + 1 + 4 + 2, bos.size());
+    }
+
+    @Test
+    public void truncatedDumpKeepsWholeClasses() {
+        byte[] a = CoverageProbe.register("a/A", 16);
+        byte[] b = CoverageProbe.register("b/B", 16);
+        a[3] = 1;
+        b[4] = 1;
+        byte[] dump = CoverageProbe.snapshot();
+
+        // the target died while writing the bits of the second class
+        LinkedHashMap<String, BitSet> coverage = CoverageProbe.read(new ByteArrayInputStream(Arrays.copyOf(dump, dump.length - 1)));
+        assertEquals(1, coverage.size());
+        assertEquals(bits(3), coverage.get("a/A"));
+
+        assertTrue(CoverageProbe.read(new ByteArrayInputStream(Arrays.copyOf(dump, 6))).isEmpty());
+        assertTrue(CoverageProbe.read(new ByteArrayInputStream(new byte[0])).isEmpty());
+    }
+
+    @Test
+    public void otherFilesAreEmpty() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(CoverageProbe.MAGIC + 1);
+        out.writeInt(0);
+        assertTrue(CoverageProbe.read(new ByteArrayInputStream(bos.toByteArray())).isEmpty());
+    }
+
+    @Test
+    public void registerAgainReplacesTheSlots() {
+        byte[] first = CoverageProbe.register("A", 4);
+        first[1] = 1;
+        CoverageProbe.register("A", 4);
+        LinkedHashMap<String, BitSet> coverage = CoverageProbe.read(new ByteArrayInputStream(CoverageProbe.snapshot()));
+        assertTrue(coverage.get("A").isEmpty());
+    }
+}
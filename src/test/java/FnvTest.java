@@ -0,0 +1,24 @@
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FnvTest {
+
+    @Test
+    public void knownHashes() {
+        assertEquals(0xcbf29ce484222325L, Fnv.hash(new byte[0]));
+        assertEquals(0xaf63dc4c8601ec8cL, Fnv.hash("a".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0x85944171f73967e8L, Fnv.hash("foobar".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void foldingMatchesOneHash() {
+        byte[] bytes = "foobar".getBytes(StandardCharsets.UTF_8);
+        long h = Fnv.add(Fnv.OFFSET, bytes, 0, 3);
+        assertEquals(Fnv.hash(bytes), Fnv.add(h, bytes, 3, 3));
+        // ASCII chars hash as their bytes
+        assertEquals(Fnv.hash(bytes), Fnv.add(Fnv.OFFSET, "foobar"));
+    }
+}
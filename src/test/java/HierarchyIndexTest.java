@@ -0,0 +1,111 @@
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class HierarchyIndexTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    static HierarchyIndex jdk;
+
+    @BeforeClass
+    public static void scanJavaBase() throws IOException {
+        HashMap<String, HierarchyIndex.Entry> classes = new HashMap<>();
+        HierarchyIndex.scanTree(FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules/java.base"), classes);
+        jdk = new HierarchyIndex(classes);
+    }
+
+    /**
+     * ClassWriter's own answer, from loaded classes.
+     */
+    static String loaded(String type1, String type2) {
+        return new ClassWriter(0) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return super.getCommonSuperClass(type1, type2);
+            }
+        }.getCommonSuperClass(type1, type2);
+    }
+
+    @Test
+    public void sameAnswersAsClassLoading() {
+        String[][] pairs = {
+                {"java/util/ArrayList", "java/util/LinkedList"},
+                {"java/util/LinkedList", "java/util/ArrayList"},
+                {"java/lang/Integer", "java/lang/Long"},
+                {"java/lang/String", "java/lang/Integer"},
+                {"java/util/ArrayList", "java/util/List"},
+                {"java/util/List", "java/util/ArrayList"},
+                {"java/util/List", "java/util/Set"},
+                {"java/io/IOException", "java/io/FileNotFoundException"},
+                {"java/io/FileNotFoundException", "java/io/IOException"},
+                {"java/lang/RuntimeException", "java/io/IOException"},
+                {"java/lang/IllegalArgumentException", "java/lang/NumberFormatException"},
+                {"java/lang/Object", "java/lang/String"},
+                {"java/lang/String", "java/lang/String"},
+                {"java/util/HashMap", "java/util/TreeMap"},
+                {"java/lang/Runnable", "java/lang/Thread"},
+                {"java/lang/Comparable", "java/lang/String"},
+        };
+        for (String[] pair : pairs) {
+            assertEquals(pair[0] + ", " + pair[1], loaded(pair[0], pair[1]), jdk.getCommonSuperClass(pair[0], pair[1]));
+        }
+    }
+
+    @Test
+    public void unknownTypes() {
+        assertNull(jdk.getCommonSuperClass("a/Missing", "java/lang/String"));
+        assertNull(jdk.getCommonSuperClass("java/lang/String", "a/Missing"));
+        assertFalse(jdk.isAssignableFrom("java/lang/String", "a/Missing"));
+        assertTrue(jdk.isAssignableFrom(HierarchyIndex.OBJECT, "a/Missing"));
+    }
+
+    @Test
+    public void typesNeitherKnowsFailTheWriter() {
+        HierarchyIndex saved = HierarchyIndex.instance;
+        HierarchyIndex.instance = jdk;
+        try {
+            HierarchyClassWriter cw = new HierarchyClassWriter(0);
+            assertEquals("java/util/AbstractList", cw.getCommonSuperClass("java/util/ArrayList", "java/util/Vector"));
+            try {
+                cw.getCommonSuperClass("a/Missing", "b/Missing");
+                fail("an unknown type was resolved");
+            } catch (TypeNotPresentException e) {
+                // as a plain ClassWriter
+            }
+        } finally {
+            HierarchyIndex.instance = saved;
+        }
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        File file = new File(tmp.getRoot(), "index/hierarchy.idx");
+        jdk.save(file, "key");
+        assertEquals(1, file.getParentFile().list().length);
+
+        HierarchyIndex loaded = HierarchyIndex.load(file, "key");
+        assertNotNull(loaded);
+        assertEquals(jdk.size(), loaded.size());
+        HierarchyIndex.Entry e = loaded.lookup("java/util/ArrayList");
+        assertEquals("java/util/AbstractList", e.superName);
+        assertFalse(e.isInterface);
+        assertTrue(loaded.lookup("java/util/List").isInterface);
+        assertNull(loaded.lookup(HierarchyIndex.OBJECT).superName);
+
+        assertNull(HierarchyIndex.load(file, "other key"));
+        Checkpoint.truncate(file, file.length() / 2);
+        assertNull(HierarchyIndex.load(file, "key"));
+        assertNull(HierarchyIndex.load(new File(tmp.getRoot(), "missing.idx"), "key"));
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (long v = 0; v < 2 * Histogram.SUB_COUNT; v++) {
+            assertEquals(v, Histogram.bucket(v));
+            assertEquals(v, Histogram.highest((int) v));
+        }
+    }
+
+    @Test
+    public void bucketsHoldTheirValues() {
+        long[] values = {64, 65, 100, 127, 128, 1000, 4095, 4096, 123456789L, Long.MAX_VALUE};
+        for (long v : values) {
+            int bucket = Histogram.bucket(v);
+            assertTrue(v + " above its bucket", Histogram.highest(bucket) >= v);
+            assertTrue(v + " below its bucket", bucket == 0 || Histogram.highest(bucket - 1) < v);
+            // off by at most 1/2^SUB_BITS
+            assertTrue(v + " off too far", Histogram.highest(bucket) - v <= v / Histogram.SUB_COUNT);
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int b = 1; b < Histogram.bucket(1L << 20); b++) {
+            assertEquals(b, Histogram.bucket(Histogram.highest(b - 1) + 1));
+        }
+    }
+
+    @Test
+    public void emptyHistogram() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentile(0.5));
+        assertEquals(0, h.percentile(1));
+    }
+
+    @Test
+    public void percentiles() {
+        Histogram h = new Histogram();
+        for (long v = 1; v <= 1000; v++) {
+            h.record(v);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(500500, h.sum());
+        assertEquals(1000, h.max());
+        long p50 = h.percentile(0.5);
+        assertTrue(p50 >= 500 && p50 <= 500 + 500 / Histogram.SUB_COUNT);
+        long p99 = h.percentile(0.99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1, h.percentile(0));
+        assertEquals(1000, h.percentile(1));
+    }
+
+    @Test
+    public void percentileIsCappedByMax() {
+        Histogram h = new Histogram();
+        h.record(1000);
+        assertEquals(1000, h.percentile(0.5));
+    }
+
+    @Test
+    public void negativeCountsAsZero() {
+        Histogram h = new Histogram();
+        h.record(-5);
+        assertEquals(1, h.count());
+        assertEquals(0, h.sum());
+        assertEquals(0, h.percentile(1));
+    }
+
+    @Test
+    public void concurrentRecords() throws InterruptedException {
+        Histogram h = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 1; i <= 10000; i++) {
+                    h.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(40000, h.count());
+        assertEquals(4L * 10000 * 10001 / 2, h.sum());
+        assertEquals(10000, h.max());
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyTrackerTest {
+
+    @Test
+    public void ceilingBeforeAnySample() {
+        LatencyTracker latency = new LatencyTracker();
+        assertEquals(0, latency.size());
+        assertEquals(Config.TIMEOUT_CEILING, latency.timeout());
+    }
+
+    @Test
+    public void fastRunsAreClampedToTheFloor() {
+        LatencyTracker latency = new LatencyTracker();
+        latency.add(1);
+        assertEquals(Config.TIMEOUT_FLOOR, latency.timeout());
+    }
+
+    @Test
+    public void slowRunsAreClampedToTheCeiling() {
+        LatencyTracker latency = new LatencyTracker();
+        latency.add(Config.TIMEOUT_CEILING);
+        assertEquals(Config.TIMEOUT_CEILING, latency.timeout());
+    }
+
+    @Test
+    public void timeoutIsP99TimesFactor() {
+        LatencyTracker latency = new LatencyTracker();
+        // 100 samples, p99 is the 99th smallest
+        for (int i = 1; i <= 100; i++) {
+            latency.add(i * 30);
+        }
+        long expected = (long) (99 * 30 * Config.TIMEOUT_FACTOR);
+        assertTrue(expected > Config.TIMEOUT_FLOOR && expected < Config.TIMEOUT_CEILING);
+        assertEquals(expected, latency.timeout());
+    }
+
+    @Test
+    public void oldSamplesLeaveTheWindow() {
+        LatencyTracker latency = new LatencyTracker();
+        for (int i = 0; i < Config.LATENCY_WINDOW; i++) {
+            latency.add(Config.TIMEOUT_CEILING);
+        }
+        assertEquals(Config.TIMEOUT_CEILING, latency.timeout());
+        for (int i = 0; i < Config.LATENCY_WINDOW; i++) {
+            latency.add(1);
+        }
+        assertEquals(Config.LATENCY_WINDOW, latency.size());
+        assertEquals(Config.TIMEOUT_FLOOR, latency.timeout());
+    }
+}
@@ -0,0 +1,162 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MainTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    ExecutorService pool;
+
+    /**
+     * A chain whose mutants are not generated or run: each has a given outcome, and the order of the
+     * acceptance tests is recorded.
+     */
+    static class StubParser extends ClassParser {
+        final HashMap<Integer, String> outcomes = new HashMap<>();
+        final HashMap<Integer, CountDownLatch> blocked = new HashMap<>();
+        final List<Integer> evaluated = Collections.synchronizedList(new ArrayList<>());
+        final ArrayList<Integer> accepted = new ArrayList<>();
+        int failing = -1;
+
+        @Override
+        public void generateMutant(MutationStmt ms) throws IOException {
+            if (ms.ID == failing) {
+                throw new IOException("mutant " + ms.ID + " cannot be generated");
+            }
+        }
+
+        @Override
+        public ExecutionResult evaluateMutant(MutationStmt ms) throws IOException {
+            evaluated.add(ms.ID);
+            CountDownLatch latch = blocked.get(ms.ID);
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return new ExecutionResult(new BitSet(), ExecutionResult.EXITED);
+        }
+
+        @Override
+        public String acceptMutant(MutationStmt ms, ExecutionResult msResult) {
+            accepted.add(ms.ID);
+            return outcomes.get(ms.ID);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    StubParser chain() throws IOException {
+        StubParser cp = new StubParser();
+        cp.resultOut = new FileOutputStream(tmp.newFile());
+        return cp;
+    }
+
+    /**
+     * Proposes candidates at the given iterations, with the given outcomes, ids are the iterations.
+     */
+    static ArrayList<MutationStmt> batch(StubParser cp, int[] iterations, String... outcomes) {
+        ArrayList<MutationStmt> batch = new ArrayList<>();
+        for (int i = 0; i < iterations.length; i++) {
+            MutationStmt ms = new MutationStmt("main", 0, 0, new ArrayList<>(), iterations[i]);
+            ms.iteration = iterations[i];
+            cp.outcomes.put(ms.ID, outcomes[i]);
+            batch.add(ms);
+        }
+        return batch;
+    }
+
+    @Test
+    public void acceptanceInProposalOrderUpToTheFirstAccepted() throws Exception {
+        StubParser cp = chain();
+        ArrayList<MutationStmt> batch = batch(cp, new int[]{10, 11, 12, 13, 14}, Config.REJ, Config.NONLIVE, Config.ACC, Config.ACC, Config.REJ);
+        int stale = Main.STALE.get();
+        assertEquals(3, Main.runCandidates(cp, pool, 10, batch, 0));
+        assertEquals(Arrays.asList(10, 11, 12), cp.accepted);
+        assertEquals(stale + 2, Main.STALE.get());
+        cp.resultOut.close();
+    }
+
+    @Test
+    public void everyProposalIsConsumedWithoutAcceptance() throws Exception {
+        StubParser cp = chain();
+        // 11 and 14 were pruned
+        ArrayList<MutationStmt> batch = batch(cp, new int[]{10, 12, 13}, Config.REJ, Config.REJ, Config.TIMEOUT);
+        assertEquals(5, Main.runCandidates(cp, pool, 10, batch, 2));
+        assertEquals(Arrays.asList(10, 12, 13), cp.accepted);
+        cp.resultOut.close();
+    }
+
+    @Test
+    public void prunedProposalsAfterTheAcceptedOneAreNotConsumed() throws Exception {
+        StubParser cp = chain();
+        // 11, 14 and 15 were pruned, 12 is accepted
+        ArrayList<MutationStmt> batch = batch(cp, new int[]{10, 12, 13}, Config.REJ, Config.ACC, Config.REJ);
+        assertEquals(3, Main.runCandidates(cp, pool, 10, batch, 3));
+        assertEquals(Arrays.asList(10, 12), cp.accepted);
+        cp.resultOut.close();
+    }
+
+    @Test
+    public void failedGenerationIsSkipped() throws Exception {
+        StubParser cp = chain();
+        cp.failing = 11;
+        ArrayList<MutationStmt> batch = batch(cp, new int[]{10, 11, 12}, Config.REJ, Config.ACC, Config.ACC);
+        assertEquals(3, Main.runCandidates(cp, pool, 10, batch, 0));
+        assertEquals(Arrays.asList(10, 12), cp.accepted);
+        assertFalse(cp.evaluated.contains(11));
+        cp.resultOut.close();
+    }
+
+    @Test
+    public void candidatesAfterTheAcceptedOneAreCancelled() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        StubParser cp = chain();
+        ArrayList<MutationStmt> batch = batch(cp, new int[]{10, 11, 12, 13}, Config.ACC, Config.REJ, Config.REJ, Config.REJ);
+        // the only worker is held in 11, if it starts it before the cancellation
+        CountDownLatch release = new CountDownLatch(1);
+        cp.blocked.put(11, release);
+        int stale = Main.STALE.get();
+        int wasted = Main.WASTED.get();
+        assertEquals(1, Main.runCandidates(cp, single, 10, batch, 0));
+        release.countDown();
+        single.shutdown();
+        assertTrue(single.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList(10), cp.accepted);
+        assertEquals(stale + 3, Main.STALE.get());
+        assertFalse(cp.evaluated.contains(12));
+        assertFalse(cp.evaluated.contains(13));
+        assertEquals(cp.evaluated.contains(11) ? wasted + 1 : wasted, Main.WASTED.get());
+        cp.resultOut.close();
+    }
+}
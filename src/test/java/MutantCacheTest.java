@@ -0,0 +1,131 @@
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MutantCacheTest {
+
+    static MutationStmt hook(String method, int hi, int hp, int id) {
+        ArrayList<Integer> tps = new ArrayList<>();
+        tps.add(hp + 10);
+        return new MutationStmt(method, hi, hp, tps, id);
+    }
+
+    static MutationStmt removal(String method, int id, int removed) {
+        return new MutationStmt(method, -1, -1, new ArrayList<>(), id, removed);
+    }
+
+    /**
+     * A chain state holding the given hooks, added in order.
+     */
+    static Map<String, Method> state(MutationStmt... hooks) {
+        LinkedHashMap<String, Method> methods = new LinkedHashMap<>();
+        for (MutationStmt ms : hooks) {
+            methods.computeIfAbsent(ms.METHOD, Method::new).addMutation(ms);
+        }
+        return methods;
+    }
+
+    @Test
+    public void idsAreIgnored() {
+        Map<String, Method> s1 = state(hook("m", Opcodes.GOTO, 0, 1), hook("m", Opcodes.RETURN, 2, 2));
+        Map<String, Method> s2 = state(hook("m", Opcodes.GOTO, 0, 7), hook("m", Opcodes.RETURN, 2, 9));
+        assertEquals(MutantCache.setHash(s1, hook("n", Opcodes.ATHROW, 1, 3)), MutantCache.setHash(s2, hook("n", Opcodes.ATHROW, 1, 11)));
+    }
+
+    @Test
+    public void hooksAtDifferentPointsAreUnordered() {
+        Map<String, Method> s1 = state(hook("m", Opcodes.GOTO, 0, 1), hook("n", Opcodes.RETURN, 2, 2));
+        Map<String, Method> s2 = state(hook("n", Opcodes.RETURN, 2, 2), hook("m", Opcodes.GOTO, 0, 1));
+        MutationStmt ms = hook("m", Opcodes.ATHROW, 4, 3);
+        assertEquals(MutantCache.setHash(s1, ms), MutantCache.setHash(s2, ms));
+        // the added hook is hashed as if it had been in the state
+        assertEquals(MutantCache.setHash(s1, ms), MutantCache.setHash(state(hook("m", Opcodes.GOTO, 0, 1), hook("n", Opcodes.RETURN, 2, 2), ms), removal("m", 5, 99)));
+    }
+
+    @Test
+    public void stackedHooksKeepTheirOrder() {
+        MutationStmt a = hook("m", Opcodes.GOTO, 0, 1);
+        MutationStmt b = hook("m", Opcodes.RETURN, 0, 2);
+        // emitted newest first, so these states differ
+        assertNotEquals(MutantCache.setHash(state(a, b), removal("m", 3, 99)), MutantCache.setHash(state(b, a), removal("m", 3, 99)));
+        // ms is emitted before the stacked hooks, as if it had been added last
+        assertEquals(MutantCache.setHash(state(a, b), removal("m", 3, 99)), MutantCache.setHash(state(a), b));
+        assertNotEquals(MutantCache.setHash(state(b, a), removal("m", 3, 99)), MutantCache.setHash(state(a), b));
+    }
+
+    @Test
+    public void removedHooksAreLeftOut() {
+        MutationStmt a = hook("m", Opcodes.GOTO, 0, 1);
+        MutationStmt b = hook("m", Opcodes.RETURN, 0, 2);
+        MutationStmt c = hook("m", Opcodes.ATHROW, 3, 3);
+        MutationStmt nothing = removal("m", 9, 99);
+        assertEquals(MutantCache.setHash(state(b, c), nothing), MutantCache.setHash(state(a, b, c), removal("m", 4, a.ID)));
+        assertEquals(MutantCache.setHash(state(a, b), nothing), MutantCache.setHash(state(a, b, c), removal("m", 4, c.ID)));
+        assertNotEquals(MutantCache.setHash(state(a, b, c), nothing), MutantCache.setHash(state(a, b, c), removal("m", 4, c.ID)));
+    }
+
+    @Test
+    public void lookupByEitherHash() {
+        MutantCache cache = new MutantCache(2);
+        MutationStmt ms = hook("m", Opcodes.GOTO, 0, 1);
+        ms.setHash = 1;
+        ms.bytesHash = 2;
+        assertNull(cache.get(ms));
+        cache.put(ms, new ExecutionResult(new BitSet(), ExecutionResult.EXITED));
+
+        MutationStmt sameSet = hook("m", Opcodes.GOTO, 0, 2);
+        sameSet.setHash = 1;
+        sameSet.bytesHash = 5;
+        assertNotNull(cache.get(sameSet));
+        MutationStmt sameBytes = hook("m", Opcodes.GOTO, 0, 3);
+        sameBytes.setHash = 6;
+        sameBytes.bytesHash = 2;
+        assertNotNull(cache.get(sameBytes));
+    }
+
+    @Test
+    public void timeoutsAreNotCached() {
+        MutantCache cache = new MutantCache(2);
+        MutationStmt ms = hook("m", Opcodes.GOTO, 0, 1);
+        cache.put(ms, new ExecutionResult(new BitSet(), ExecutionResult.TIMEOUT));
+        assertNull(cache.get(ms));
+    }
+
+    @Test
+    public void hitsAreCopies() {
+        MutantCache cache = new MutantCache(2);
+        MutationStmt ms = hook("m", Opcodes.GOTO, 0, 1);
+        BitSet livecode = new BitSet();
+        livecode.set(3);
+        cache.put(ms, new ExecutionResult(livecode, ExecutionResult.EXITED));
+        livecode.set(4);
+        ExecutionResult hit = cache.get(ms);
+        assertTrue(hit.cached);
+        hit.livecode.set(5);
+        assertEquals(1, cache.get(ms).livecode.cardinality());
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        MutantCache cache = new MutantCache(2);
+        MutationStmt[] mutants = new MutationStmt[3];
+        for (int i = 0; i < mutants.length; i++) {
+            mutants[i] = hook("m", Opcodes.GOTO, i, i + 1);
+            mutants[i].setHash = i;
+            mutants[i].bytesHash = 100 + i;
+        }
+        for (MutationStmt ms : mutants) {
+            cache.put(ms, new ExecutionResult(new BitSet(), ExecutionResult.EXITED));
+        }
+        assertNull(cache.get(mutants[0]));
+        assertNotNull(cache.get(mutants[1]));
+        assertNotNull(cache.get(mutants[2]));
+    }
+}
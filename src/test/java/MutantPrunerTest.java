@@ -0,0 +1,91 @@
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class MutantPrunerTest {
+
+    static boolean isReturn(ClassParser cp, int head) {
+        InsnStmt is = cp.insnList.get(head);
+        return is.insnName.equals("Insn") && is.insnContent.equals(String.valueOf(Opcodes.RETURN));
+    }
+
+    /**
+     * @param cp        a chain that parsed Seed
+     * @param main      the main method of Seed
+     * @param ret       whether the label head has to be a RETURN
+     * @return          a label of main headed by a seed insn, RETURN or not as asked
+     */
+    static int label(ClassParser cp, Method main, boolean ret) {
+        for (int hp = 0; hp < main.labelCount; hp++) {
+            int head = main.labelHeads.get(hp);
+            if (head >= 0 && isReturn(cp, head) == ret) {
+                return hp;
+            }
+        }
+        throw new AssertionError("no label with ret=" + ret);
+    }
+
+    /**
+     * @return  the id of an insn of main that lies in the label hp
+     */
+    static int insnIn(ClassParser cp, Method main, int hp) {
+        for (InsnStmt is : cp.insnList) {
+            if (is.methodName.equals(main.methodName) && is.labelIdx == hp) {
+                return is.id;
+            }
+        }
+        throw new AssertionError("no insn in label " + hp);
+    }
+
+    @Test
+    public void hookOutsideTheLabelsIsNeverEmitted() throws Exception {
+        ClassParser cp = Seeds.parse();
+        Method main = Seeds.main(cp);
+        MutationStmt ms = new MutationStmt(main.methodName, Opcodes.ATHROW, main.labelCount, Seeds.tps(), cp.nextMutationId());
+        assertEquals(MutantPruner.NO_LABEL, MutantPruner.classify(cp, ms));
+    }
+
+    @Test
+    public void gotoToItsOwnLabelFallsThrough() throws Exception {
+        ClassParser cp = Seeds.parse();
+        Method main = Seeds.main(cp);
+        int hp = label(cp, main, false);
+        MutationStmt ms = new MutationStmt(main.methodName, Opcodes.GOTO, hp, Seeds.tps(insnIn(cp, main, hp)), cp.nextMutationId());
+        assertEquals(MutantPruner.GOTO_FALLTHROUGH, MutantPruner.classify(cp, ms));
+    }
+
+    @Test
+    public void returnRightBeforeReturnChangesNothing() throws Exception {
+        ClassParser cp = Seeds.parse();
+        Method main = Seeds.main(cp);
+        MutationStmt ms = new MutationStmt(main.methodName, Opcodes.RETURN, label(cp, main, true), Seeds.tps(), cp.nextMutationId());
+        assertEquals(MutantPruner.RETURN_BEFORE_RETURN, MutantPruner.classify(cp, ms));
+    }
+
+    @Test
+    public void deadHookOnlyWhenTheRunExited() throws Exception {
+        ClassParser cp = Seeds.parse();
+        Method main = Seeds.main(cp);
+        MutationStmt ms = new MutationStmt(main.methodName, Opcodes.RETURN, label(cp, main, false), Seeds.tps(), cp.nextMutationId());
+        cp.curLivecodeSet = new BitSet();
+        cp.curLivecodeExited = false;
+        assertNull(MutantPruner.classify(cp, ms));
+        cp.curLivecodeExited = true;
+        assertEquals(MutantPruner.DEAD_HOOK, MutantPruner.classify(cp, ms));
+        cp.curLivecodeSet.set(main.labelHeads.get(ms.HP));
+        assertNull(MutantPruner.classify(cp, ms));
+    }
+
+    @Test
+    public void otherHooksAtTheLabelKeepTheMutant() throws Exception {
+        ClassParser cp = Seeds.parse();
+        Method main = Seeds.main(cp);
+        int hp = label(cp, main, true);
+        main.addMutation(new MutationStmt(main.methodName, Opcodes.ATHROW, hp, Seeds.tps(), cp.nextMutationId()));
+        MutationStmt ms = new MutationStmt(main.methodName, Opcodes.RETURN, hp, Seeds.tps(), cp.nextMutationId());
+        assertNull(MutantPruner.classify(cp, ms));
+    }
+}
@@ -0,0 +1,152 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class MutationJournalTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+
+    static ClassParser chain() throws IOException {
+        ClassParser cp = Seeds.parse();
+        cp.seedLivecode = bits(0, 1, 2, 9);
+        return cp;
+    }
+
+    static MutationStmt mutant(ClassParser cp, String method, int iteration, int remove) {
+        MutationStmt ms = new MutationStmt(method, iteration % 5, iteration % 3, Seeds.tps(iteration, iteration + 1), cp.nextMutationId(), remove);
+        ms.iteration = iteration;
+        ms.live = 10 + iteration;
+        ms.livecodeDelta = bits(iteration, 70);
+        ms.newlyCovered = iteration % 2 == 0 ? bits(iteration + 100) : null;
+        return ms;
+    }
+
+    static final String[] OUTCOMES = {Config.ACC, Config.REJ, Config.NONLIVE, Config.TIMEOUT};
+
+    /**
+     * Journals iterations [from, to) of a chain, alternating between two methods.
+     */
+    static ArrayList<MutationStmt> append(MutationJournal journal, ClassParser cp, int from, int to) throws IOException {
+        ArrayList<MutationStmt> appended = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            MutationStmt ms = mutant(cp, i % 2 == 0 ? "main([Ljava/lang/String;)V" : "<init>()V", i, i == 3 ? 1 : -1);
+            journal.append(ms, OUTCOMES[i % OUTCOMES.length]);
+            appended.add(ms);
+        }
+        return appended;
+    }
+
+    static void assertRecords(ArrayList<MutationStmt> expected, ArrayList<MutationJournal.Entry> entries) {
+        assertEquals(expected.size(), entries.size());
+        for (int i = 0; i < expected.size(); i++) {
+            MutationStmt ms = expected.get(i);
+            MutationJournal.Entry e = entries.get(i);
+            assertEquals(ms.iteration, e.ms.iteration);
+            assertEquals(ms.ID, e.ms.ID);
+            assertEquals(ms.METHOD, e.ms.METHOD);
+            assertEquals(ms.HI, e.ms.HI);
+            assertEquals(ms.HP, e.ms.HP);
+            assertEquals(ms.REMOVE, e.ms.REMOVE);
+            assertEquals(ms.TPS, e.ms.TPS);
+            assertEquals(OUTCOMES[ms.iteration % OUTCOMES.length], e.outcome);
+            assertEquals(ms.live, e.live);
+            assertEquals(ms.livecodeDelta, e.livecodeDelta);
+            assertEquals(ms.newlyCovered == null ? new BitSet() : ms.newlyCovered, e.newlyCovered);
+            assertEquals(e.newlyCovered.cardinality(), e.newCoverage);
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = tmp.newFile("chain.journal");
+        ClassParser cp = chain();
+        MutationJournal journal = new MutationJournal(file, cp, 0);
+        ArrayList<MutationStmt> appended = append(journal, cp, 0, 10);
+        journal.close();
+
+        BitSet seedLivecode = new BitSet();
+        assertRecords(appended, MutationJournal.read(file, Checkpoint.key(cp), seedLivecode));
+        assertEquals(cp.seedLivecode, seedLivecode);
+        assertRecords(appended, MutationJournal.read(file, null));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherCampaign() throws IOException {
+        File file = tmp.newFile("chain.journal");
+        ClassParser cp = chain();
+        new MutationJournal(file, cp, 0).close();
+        MutationJournal.read(file, "another campaign");
+    }
+
+    @Test
+    public void tornRecordIsCutOff() throws IOException {
+        File file = tmp.newFile("chain.journal");
+        ClassParser cp = chain();
+        MutationJournal journal = new MutationJournal(file, cp, 0);
+        ArrayList<MutationStmt> appended = append(journal, cp, 0, 5);
+        journal.sync();
+        long kept = file.length();
+        appended.addAll(append(journal, cp, 5, 6));
+        journal.close();
+
+        // every cut inside the last record leaves the records before it
+        for (long length = kept; length < file.length(); length++) {
+            File torn = tmp.newFile();
+            Files.copy(file.toPath(), torn.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Checkpoint.truncate(torn, length);
+            assertRecords(new ArrayList<>(appended.subList(0, 5)), MutationJournal.read(torn, null));
+        }
+        assertRecords(appended, MutationJournal.read(file, null));
+    }
+
+    @Test
+    public void resumeCutsTheRecordsFromTheCheckpointOn() throws IOException {
+        File file = tmp.newFile("chain.journal");
+        ClassParser cp = chain();
+        MutationJournal journal = new MutationJournal(file, cp, 0);
+        ArrayList<MutationStmt> appended = append(journal, cp, 0, 8);
+        journal.close();
+        // a torn record after the last checkpoint
+        Checkpoint.truncate(file, file.length() - 2);
+
+        journal = new MutationJournal(file, cp, 5);
+        ArrayList<MutationStmt> expected = new ArrayList<>(appended.subList(0, 5));
+        expected.addAll(append(journal, cp, 5, 9));
+        journal.close();
+        // method indexes of the kept records are reused, not written again
+        assertRecords(expected, MutationJournal.read(file, Checkpoint.key(cp)));
+    }
+
+    @Test
+    public void resumeOfAnotherCampaignStartsOver() throws IOException {
+        File file = tmp.newFile("chain.journal");
+        ClassParser cp = chain();
+        MutationJournal journal = new MutationJournal(file, cp, 0);
+        append(journal, cp, 0, 4);
+        journal.close();
+
+        ClassParser other = chain();
+        other.chainId = 1;
+        journal = new MutationJournal(file, other, 3);
+        ArrayList<MutationStmt> appended = append(journal, other, 3, 5);
+        journal.close();
+        assertRecords(appended, MutationJournal.read(file, Checkpoint.key(other)));
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class SeedCacheTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    static ExecutionResult seedRun(String outcome, BitSet livecode) {
+        ExecutionResult result = new ExecutionResult(livecode, outcome);
+        result.time = 321;
+        result.timeout = Config.TIMEOUT_CEILING;
+        result.traceLength = 12;
+        return result;
+    }
+
+    static BitSet livecode() {
+        BitSet livecode = new BitSet();
+        livecode.set(0, 6);
+        return livecode;
+    }
+
+    /**
+     * @return  the model of a chain, as far as mutants are generated from it
+     */
+    static String describe(ClassParser cp) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(cp.className).append(' ').append(cp.methodCount).append('\n');
+        for (InsnStmt is : cp.insnList) {
+            sb.append(is.id).append(' ').append(is.identifier()).append(' ').append(is.labelIdx).append(' ').append(is.isDefUse).append('\n');
+        }
+        for (String identifier : new TreeSet<>(cp.insnDict.keySet())) {
+            sb.append(identifier).append(" -> ").append(cp.insnDict.get(identifier).id).append('\n');
+        }
+        for (String name : new TreeSet<>(cp.methodDictionary.keySet())) {
+            Method method = cp.methodDictionary.get(name);
+            sb.append(name).append(' ').append(method.labelCount).append(' ').append(method.variableCount).append(' ').append(method.insnSet).append(' ').append(method.labelHeads).append('\n');
+        }
+        for (String name : new TreeSet<>(cp.insnTable.keySet())) {
+            sb.append(name);
+            for (InsnStmt[] candidates : cp.insnTable.get(name)) {
+                sb.append(" [");
+                for (InsnStmt is : candidates) {
+                    sb.append(is.id).append(',');
+                }
+                sb.append(']');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = new File(tmp.getRoot(), "entries/seed.seed");
+        ClassParser cp = Seeds.parse();
+        SeedCache cache = SeedCache.open("key", file);
+        assertFalse(cache.hit());
+        cache.save(cp, seedRun(ExecutionResult.EXITED, livecode()));
+
+        cache = SeedCache.open("key", file);
+        assertTrue(cache.hit());
+        ExecutionResult result = cache.seedResult();
+        assertEquals(livecode(), result.livecode);
+        assertEquals(ExecutionResult.EXITED, result.outcome);
+        assertEquals(321, result.time);
+        assertEquals(Config.TIMEOUT_CEILING, result.timeout);
+        assertEquals(12, result.traceLength);
+        assertTrue(result.cached);
+
+        ClassParser restored = new ClassParser();
+        cache.restore(restored);
+        assertEquals(describe(cp), describe(restored));
+        assertArrayEquals(cp.seedBytecode, restored.seedBytecode);
+        assertArrayEquals(cp.instrumentedSeed, restored.instrumentedSeed);
+        assertEquals(cp.totalLivecodeSet.words.length(), restored.totalLivecodeSet.words.length());
+        assertEquals(0, restored.totalLivecodeSet.cardinality());
+
+        // both models generate the same mutant
+        Method main = Seeds.main(cp);
+        int tp = main.insnList.size() - 1;
+        assertArrayEquals(cp.mutateClass(new MutationStmt(main.methodName, 1, 0, Seeds.tps(tp), 1)),
+                restored.mutateClass(new MutationStmt(main.methodName, 1, 0, Seeds.tps(tp), 1)));
+    }
+
+    @Test
+    public void otherKeyMisses() throws IOException {
+        File file = new File(tmp.getRoot(), "seed.seed");
+        SeedCache.open("key", file).save(Seeds.parse(), seedRun(ExecutionResult.EXITED, livecode()));
+        assertTrue(file.exists());
+        assertFalse(SeedCache.open("other key", file).hit());
+    }
+
+    @Test
+    public void cutShortEntryMisses() throws IOException {
+        File file = new File(tmp.getRoot(), "seed.seed");
+        SeedCache.open("key", file).save(Seeds.parse(), seedRun(ExecutionResult.EXITED, livecode()));
+        long length = file.length();
+        for (long cut : new long[]{1, length / 2, length - 20}) {
+            Checkpoint.truncate(file, length - cut);
+            assertFalse(SeedCache.open("key", file).hit());
+        }
+    }
+
+    @Test
+    public void onlyCleanRunsAreCached() throws IOException {
+        ClassParser cp = Seeds.parse();
+        ArrayList<ExecutionResult> runs = new ArrayList<>();
+        runs.add(seedRun(ExecutionResult.TIMEOUT, livecode()));
+        runs.add(seedRun(ExecutionResult.STALLED, livecode()));
+        runs.add(seedRun(ExecutionResult.TRACE_BUDGET, livecode()));
+        runs.add(seedRun(ExecutionResult.EXITED, new BitSet()));
+        for (ExecutionResult run : runs) {
+            File file = new File(tmp.getRoot(), run.outcome + ".seed");
+            SeedCache.open("key", file).save(cp, run);
+            assertFalse(run.toString(), file.exists());
+        }
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+/**
+ * Seed classes for the tests. The Seed class of the sources is parsed, and frames are computed without
+ * a HierarchyIndex file, so no test writes into the working directory.
+ */
+class Seeds {
+
+    /**
+     * @return  a chain that parsed Seed, with its random source set
+     * @throws IOException  throws IOException
+     */
+    static ClassParser parse() throws IOException {
+        if (HierarchyIndex.instance == null) {
+            HierarchyIndex.instance = new HierarchyIndex(new HashMap<>());
+        }
+        ClassParser cp = new ClassParser();
+        cp.rand = new SplittableRandom(42);
+        try (InputStream in = Seeds.class.getResourceAsStream("Seed.class")) {
+            cp.parseClass(in);
+        }
+        return cp;
+    }
+
+    /**
+     * @param cp    a chain that parsed Seed
+     * @return      the main method of Seed
+     */
+    static Method main(ClassParser cp) {
+        for (Method method : cp.methodDictionary.values()) {
+            if (method.methodName.startsWith("main")) {
+                return method;
+            }
+        }
+        throw new AssertionError("Seed has no main method: " + cp.methodDictionary.keySet());
+    }
+
+    static ArrayList<Integer> tps(Integer... tps) {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (Integer tp : tps) {
+            list.add(tp);
+        }
+        return list;
+    }
+}
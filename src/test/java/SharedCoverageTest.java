@@ -0,0 +1,56 @@
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class SharedCoverageTest {
+
+    @Test
+    public void orAndRead() {
+        SharedCoverage coverage = new SharedCoverage(200);
+        BitSet bits = new BitSet();
+        bits.set(0);
+        bits.set(63);
+        bits.set(64);
+        bits.set(199);
+        coverage.or(bits);
+        assertEquals(4, coverage.cardinality());
+        assertTrue(coverage.get(63));
+        assertTrue(coverage.get(64));
+        assertFalse(coverage.get(1));
+        assertEquals(bits, coverage.toBitSet());
+    }
+
+    @Test
+    public void idsBeyondTheSizeAreIgnored() {
+        SharedCoverage coverage = new SharedCoverage(64);
+        BitSet bits = new BitSet();
+        bits.set(5);
+        bits.set(1000);
+        coverage.or(bits);
+        assertEquals(1, coverage.cardinality());
+        assertFalse(coverage.get(1000));
+    }
+
+    @Test
+    public void concurrentOr() throws InterruptedException {
+        SharedCoverage coverage = new SharedCoverage(4096);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = offset; i < 4096; i += threads.length) {
+                    BitSet bits = new BitSet();
+                    bits.set(i);
+                    coverage.or(bits);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(4096, coverage.cardinality());
+    }
+}